@@ -0,0 +1,114 @@
+package com.kumaraswamy.camerax;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compares the old way of saving a still, copying the image plane into a new heap array and
+ * writing that through a {@link FileOutputStream}, with {@link ChannelWriter} writing the direct
+ * plane buffer as it is. Both paths write the same direct buffers of realistic JPEG sizes and
+ * report write latency and the bytes allocated per write.
+ *
+ * <p>Runs on a desktop JVM with the Android stubs of the unit tests on the class path:
+ * {@code java com.kumaraswamy.camerax.ChannelWriterBenchmark [dir] [iterations] [sync]}. On a
+ * device, call {@link #run} from a test app and pass the app's files dir; allocation counts are
+ * then reported as -1, use the memory profiler instead.
+ */
+public final class ChannelWriterBenchmark {
+    private static final int[] SIZES_MB = {2, 5, 8, 12};
+    private static final int WARMUP = 3;
+
+    private ChannelWriterBenchmark() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final File dir = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final boolean sync = args.length > 2 && Boolean.parseBoolean(args[2]);
+        System.out.print(run(dir, iterations, sync));
+    }
+
+    /**
+     * @param iterations timed writes per path and size, at least 1
+     * @param sync       flush every write to storage, as with SyncOutput
+     * @return one line per path and size
+     */
+    public static String run(final File dir, final int iterations, final boolean sync) throws IOException {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be at least 1, got " + iterations);
+        }
+        final StringBuilder report = new StringBuilder(String.format(Locale.US,
+                "%-8s %6s %9s %9s %9s %14s%n", "path", "MB", "mean ms", "p50 ms", "p95 ms", "alloc B/write"));
+        final File file = new File(dir, "channel-writer-benchmark.jpg");
+        for (final int sizeMb : SIZES_MB) {
+            final ByteBuffer plane = ByteBuffer.allocateDirect(sizeMb * 1024 * 1024);
+            for (int i = 0; i < plane.capacity(); i++) {
+                plane.put(i, (byte) (i * 31));
+            }
+            report.append(measure("byte[]", plane, file, iterations, sync, false));
+            report.append(measure("channel", plane, file, iterations, sync, true));
+        }
+        file.delete();
+        return report.toString();
+    }
+
+    private static String measure(final String name, final ByteBuffer plane, final File file, final int iterations,
+                                  final boolean sync, final boolean channel) throws IOException {
+        final long[] nanos = new long[iterations];
+        long allocated = 0;
+        for (int i = -WARMUP; i < iterations; i++) {
+            final ByteBuffer buffer = plane.duplicate();
+            final long allocatedBefore = allocatedBytes();
+            final long start = System.nanoTime();
+            if (channel) {
+                ChannelWriter.write(buffer, file.getPath(), false, sync);
+            } else {
+                writeArray(buffer, file, sync);
+            }
+            final long elapsed = System.nanoTime() - start;
+            if (i >= 0) {
+                nanos[i] = elapsed;
+                allocated += allocatedBytes() - allocatedBefore;
+            }
+        }
+        Arrays.sort(nanos);
+        long total = 0;
+        for (final long n : nanos) {
+            total += n;
+        }
+        return String.format(Locale.US, "%-8s %6d %9.2f %9.2f %9.2f %14d%n", name, plane.capacity() / (1024 * 1024),
+                total / 1e6 / iterations, nanos[iterations / 2] / 1e6, nanos[Math.min(iterations * 95 / 100, iterations - 1)] / 1e6,
+                allocatedBytes() < 0 ? -1 : allocated / iterations);
+    }
+
+    /**
+     * The path the reader listener used before ChannelWriter.
+     */
+    private static void writeArray(final ByteBuffer buffer, final File file, final boolean sync) throws IOException {
+        final byte[] bytes = new byte[buffer.capacity()];
+        buffer.get(bytes);
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            stream.write(bytes);
+            if (sync) {
+                stream.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Bytes allocated by this thread so far, -1 where the VM does not count them.
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
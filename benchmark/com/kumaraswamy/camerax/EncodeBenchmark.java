@@ -0,0 +1,130 @@
+package com.kumaraswamy.camerax;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import androidx.heifwriter.HeifWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encodes a fixed corpus of pictures in every output format and quality the component offers
+ * and reports encode time and file size per setting, relative to JPEG at quality 100. JPEG and
+ * WebP go through {@link Bitmap#compress} like preview pictures.
+ *
+ * <p>HEIC is measured with a stand-in encoder, {@link HeifWriter}, not with the path the component
+ * ships: camera HEIC stills are encoded by the camera service into an {@code ImageReader} of
+ * {@code ImageFormat.HEIC}, which needs an open camera and cannot take a fixed corpus. Both use
+ * the device's HEVC encoder, so HEIC sizes are indicative; HEIC times are not those of a capture.
+ *
+ * <p>Runs on a device only. Call {@link #run} from a test app with a folder of JPEG or PNG
+ * pictures; the app needs {@code androidx.heifwriter:heifwriter}, the component itself does not.
+ * Keep the corpus fixed between runs so results can be compared.
+ */
+public final class EncodeBenchmark {
+    private static final int JPEG = 0;
+    private static final int WEBP = 1;
+    private static final int WEBP_LOSSLESS = 2;
+    private static final int HEIC = 3;
+
+    private static final int[][] SETTINGS = {
+            {JPEG, 100}, {JPEG, 95}, {JPEG, 90}, {JPEG, 80}, {JPEG, 70},
+            {WEBP, 90}, {WEBP, 80}, {WEBP_LOSSLESS, 100},
+            {HEIC, 90}, {HEIC, 80},
+    };
+    private static final String[] NAMES = {"JPEG", "WebP", "WebP lossless", "HEIC"};
+    private static final String[] EXTENSIONS = {"jpg", "webp", "webp", "heic"};
+
+    private EncodeBenchmark() {
+    }
+
+    /**
+     * @param corpus folder of pictures to encode
+     * @param out    folder for the encoded files, they are deleted again
+     * @return one line per format and quality
+     */
+    public static String run(final File corpus, final File out) throws Exception {
+        final File[] files = corpus.listFiles();
+        final List<Bitmap> pictures = new ArrayList<>();
+        if (files != null) {
+            Arrays.sort(files);
+            for (final File file : files) {
+                final Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+                if (bitmap != null) {
+                    pictures.add(bitmap);
+                }
+            }
+        }
+        final StringBuilder report = new StringBuilder(String.format(Locale.US,
+                "%d pictures, API %d%n%-14s %7s %10s %12s %9s%n", pictures.size(), Build.VERSION.SDK_INT,
+                "format", "quality", "mean ms", "mean bytes", "vs q100"));
+        long baseline = 0;
+        for (final int[] setting : SETTINGS) {
+            if (!isSupported(setting[0])) {
+                report.append(String.format(Locale.US, "%-14s %7d %10s%n", NAMES[setting[0]], setting[1], "n/a"));
+                continue;
+            }
+            long nanos = 0;
+            long bytes = 0;
+            final File file = new File(out, "encode-benchmark." + EXTENSIONS[setting[0]]);
+            for (final Bitmap picture : pictures) {
+                final long start = System.nanoTime();
+                encode(picture, setting[0], setting[1], file);
+                nanos += System.nanoTime() - start;
+                bytes += file.length();
+            }
+            file.delete();
+            final int count = Math.max(1, pictures.size());
+            if (baseline == 0) {
+                baseline = Math.max(1, bytes);
+            }
+            report.append(String.format(Locale.US, "%-14s %7d %10.1f %12d %8.0f%%%n", NAMES[setting[0]], setting[1],
+                    nanos / 1e6 / count, bytes / count, 100.0 * bytes / baseline));
+        }
+        for (final Bitmap picture : pictures) {
+            picture.recycle();
+        }
+        return report.toString();
+    }
+
+    private static boolean isSupported(final int format) {
+        return format != HEIC || Build.VERSION.SDK_INT >= 28;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void encode(final Bitmap picture, final int format, final int quality, final File file)
+            throws Exception {
+        if (format == HEIC) {
+            final HeifWriter writer = new HeifWriter.Builder(file.getPath(), picture.getWidth(), picture.getHeight(),
+                    HeifWriter.INPUT_MODE_BITMAP).setQuality(quality).build();
+            try {
+                writer.start();
+                writer.addBitmap(picture);
+                writer.stop(0);
+            } finally {
+                writer.close();
+            }
+            return;
+        }
+        final Bitmap.CompressFormat compressFormat;
+        if (format == JPEG) {
+            compressFormat = Bitmap.CompressFormat.JPEG;
+        } else if (Build.VERSION.SDK_INT >= 30) {
+            compressFormat = format == WEBP_LOSSLESS ? Bitmap.CompressFormat.WEBP_LOSSLESS
+                    : Bitmap.CompressFormat.WEBP_LOSSY;
+        } else {
+            compressFormat = Bitmap.CompressFormat.WEBP;
+        }
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            if (!picture.compress(compressFormat, quality, stream)) {
+                throw new IOException("Could not encode as " + NAMES[format]);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.kumaraswamy.camerax;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+/**
+ * A small YUV_420_888 reader on the preview session whose frames are handed to the registered
+ * {@link FrameAnalyzer}s on a worker thread. Only the latest frame is kept: frames that arrive
+ * while the analyzers are busy are released by the reader without being looked at.
+ */
+final class AnalysisStream {
+    private static final int MAX_IMAGES = 3;
+    private static final FrameAnalyzer[] NO_ANALYZERS = new FrameAnalyzer[0];
+
+    private final YuvFrame frame = new YuvFrame();
+    private volatile FrameAnalyzer[] analyzers = NO_ANALYZERS;
+
+    private HandlerThread thread;
+    private ImageReader reader;
+
+    private final ImageReader.OnImageAvailableListener listener = new ImageReader.OnImageAvailableListener() {
+        public void onImageAvailable(final ImageReader reader) {
+            final Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            try {
+                if (analyzers.length == 0) {
+                    return;
+                }
+                final Image.Plane[] planes = image.getPlanes();
+                frame.set(image.getWidth(), image.getHeight(), image.getTimestamp(),
+                        planes[0].getBuffer(), planes[0].getRowStride(),
+                        planes[1].getBuffer(), planes[2].getBuffer(),
+                        planes[1].getRowStride(), planes[1].getPixelStride());
+                deliver(frame);
+            } finally {
+                frame.clear();
+                image.close();
+            }
+        }
+    };
+
+    /**
+     * Hands a frame to every analyzer. Each one gets the planes rewound, and one that throws
+     * does not keep the frame from the others.
+     */
+    void deliver(final YuvFrame frame) {
+        for (final FrameAnalyzer analyzer : analyzers) {
+            frame.rewind();
+            try {
+                analyzer.analyze(frame);
+            } catch (RuntimeException e) {
+                Log.e("ProCamera Analysis", "Analyzer failed", e);
+            }
+        }
+    }
+
+    /**
+     * Starts the worker and returns the surface to add to the session, reusing the reader when
+     * the size did not change.
+     */
+    Surface open(final Size size) {
+        if (thread == null) {
+            thread = new HandlerThread("ProCamera-Analysis");
+            thread.start();
+        }
+        if (reader == null || reader.getWidth() != size.getWidth() || reader.getHeight() != size.getHeight()) {
+            if (reader != null) {
+                reader.close();
+            }
+            reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+            reader.setOnImageAvailableListener(listener, new Handler(thread.getLooper()));
+        }
+        return reader.getSurface();
+    }
+
+    void close() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        if (thread != null) {
+            thread.quitSafely();
+            thread = null;
+        }
+    }
+
+    synchronized void addAnalyzer(final FrameAnalyzer analyzer) {
+        final FrameAnalyzer[] current = analyzers;
+        final FrameAnalyzer[] updated = new FrameAnalyzer[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = analyzer;
+        analyzers = updated;
+    }
+
+    synchronized void removeAnalyzer(final FrameAnalyzer analyzer) {
+        final FrameAnalyzer[] current = analyzers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == analyzer) {
+                final FrameAnalyzer[] updated = new FrameAnalyzer[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                analyzers = updated;
+                return;
+            }
+        }
+    }
+}
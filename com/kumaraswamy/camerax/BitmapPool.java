@@ -0,0 +1,70 @@
+package com.kumaraswamy.camerax;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A few reusable ARGB bitmaps for preview grabs, so repeated grabs at the same size do not
+ * allocate. Used from the UI thread only.
+ */
+final class BitmapPool {
+    private final int capacity;
+    private final List<Bitmap> free = new ArrayList<>();
+
+    private long reuses;
+    private long allocations;
+
+    BitmapPool(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * A free bitmap of the size, allocating one if none is pooled.
+     */
+    Bitmap acquire(final int width, final int height) {
+        for (int i = 0; i < free.size(); i++) {
+            final Bitmap bitmap = free.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                free.remove(i);
+                reuses++;
+                return bitmap;
+            }
+        }
+        allocations++;
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Returns a bitmap to the pool, the oldest one is recycled when the pool is full.
+     */
+    void release(final Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        if (free.size() == capacity) {
+            free.remove(0).recycle();
+        }
+        free.add(bitmap);
+    }
+
+    long reuses() {
+        return reuses;
+    }
+
+    long allocations() {
+        return allocations;
+    }
+
+    void resetCounts() {
+        reuses = allocations = 0;
+    }
+
+    void clear() {
+        for (final Bitmap bitmap : free) {
+            bitmap.recycle();
+        }
+        free.clear();
+    }
+}
@@ -0,0 +1,195 @@
+package com.kumaraswamy.camerax;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded pool of direct buffers for pictures kept in memory. Buffers are handed out as
+ * reference counted {@link Buffer}s and come back to the pool when the last reference is
+ * released, so taking picture after picture reuses the same memory.
+ */
+final class BufferPool {
+
+    /**
+     * A pooled buffer holding one picture. It starts with one reference.
+     */
+    static final class Buffer {
+        private final BufferPool pool;
+        private final ByteBuffer buffer;
+        private int length;
+        private int references = 1;
+
+        private Buffer(final BufferPool pool, final ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Copies the remaining bytes of the parts in, one after the other.
+         */
+        void fill(final ByteBuffer... parts) {
+            buffer.clear();
+            for (final ByteBuffer part : parts) {
+                buffer.put(part);
+            }
+            buffer.flip();
+            length = buffer.limit();
+        }
+
+        int length() {
+            return length;
+        }
+
+        /**
+         * A read-only view of the picture bytes, valid until the reference held is released.
+         */
+        ByteBuffer view() {
+            final ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.position(0).limit(length);
+            return view;
+        }
+
+        /**
+         * @return false if the buffer was already returned to the pool
+         */
+        boolean retain() {
+            synchronized (pool) {
+                if (references == 0) {
+                    return false;
+                }
+                references++;
+                return true;
+            }
+        }
+
+        void release() {
+            synchronized (pool) {
+                if (references == 0) {
+                    return;
+                }
+                if (--references == 0) {
+                    pool.recycle(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * New buffers are rounded up to this, so pictures a little larger than the last one still
+     * fit the buffers already allocated.
+     */
+    static final int ROUNDING = 64 * 1024;
+
+    private final List<Buffer> free = new ArrayList<>();
+    private long maxBytes;
+    private long allocatedBytes;
+    private long inUseBytes;
+    private long peakBytes;
+    private long hits;
+    private long misses;
+    private long rejected;
+
+    BufferPool(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A buffer of at least {@code size} bytes, reusing the smallest free one that fits. Free
+     * buffers that do not fit are dropped when a new one would go over the limit.
+     *
+     * @param capacity the size a new buffer gets if that is larger, such as the largest picture
+     *                 the source can produce
+     * @return null if the limit does not allow it, for example while pictures are still held
+     */
+    synchronized Buffer acquire(final int size, final int capacity) {
+        int best = -1;
+        for (int i = 0; i < free.size(); i++) {
+            final int freeCapacity = free.get(i).buffer.capacity();
+            if (freeCapacity >= size && (best < 0 || freeCapacity < free.get(best).buffer.capacity())) {
+                best = i;
+            }
+        }
+        Buffer buffer;
+        if (best >= 0) {
+            buffer = free.remove(best);
+            buffer.references = 1;
+            hits++;
+        } else {
+            final int allocate = (Math.max(size, capacity) + ROUNDING - 1) / ROUNDING * ROUNDING;
+            while (allocatedBytes + allocate > maxBytes && !free.isEmpty()) {
+                allocatedBytes -= free.remove(0).buffer.capacity();
+            }
+            if (allocatedBytes + allocate > maxBytes) {
+                rejected++;
+                return null;
+            }
+            buffer = new Buffer(this, ByteBuffer.allocateDirect(allocate));
+            allocatedBytes += allocate;
+            misses++;
+        }
+        inUseBytes += buffer.buffer.capacity();
+        peakBytes = Math.max(peakBytes, inUseBytes);
+        return buffer;
+    }
+
+    private void recycle(final Buffer buffer) {
+        inUseBytes -= buffer.buffer.capacity();
+        if (allocatedBytes > maxBytes) {
+            allocatedBytes -= buffer.buffer.capacity();
+        } else {
+            free.add(buffer);
+        }
+    }
+
+    /**
+     * Changes the limit, free buffers above it are dropped right away and held ones once they
+     * are released.
+     */
+    synchronized void setMaxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+        while (allocatedBytes > maxBytes && !free.isEmpty()) {
+            allocatedBytes -= free.remove(0).buffer.capacity();
+        }
+    }
+
+    synchronized long maxBytes() {
+        return maxBytes;
+    }
+
+    synchronized void clear() {
+        for (final Buffer buffer : free) {
+            allocatedBytes -= buffer.buffer.capacity();
+        }
+        free.clear();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long rejected() {
+        return rejected;
+    }
+
+    synchronized long inUseBytes() {
+        return inUseBytes;
+    }
+
+    synchronized long peakBytes() {
+        return peakBytes;
+    }
+
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    synchronized void resetCounts() {
+        hits = misses = rejected = 0;
+        peakBytes = inUseBytes;
+    }
+}
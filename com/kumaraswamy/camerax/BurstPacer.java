@@ -0,0 +1,121 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureRequest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Issues the stills of a continuous or interval sequence as single captures, so only the frames
+ * that are kept are encoded at full resolution while the preview repeats on its own. At most
+ * {@code maxInFlight} frames are between capture and disk. Timing is left to the caller, which
+ * issues on every interval tick, or whenever {@link #done()} asks for it when there is no
+ * interval. Issuing happens on one thread; frames may be reported done from any.
+ */
+final class BurstPacer {
+    private final int maxInFlight;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile boolean running;
+    private volatile long intervalMs;
+    private CaptureRequest request;
+    private int count;
+    private int issued;
+
+    BurstPacer(final int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Starts pacing captures of the request.
+     *
+     * @param count number of frames, or 0 to run until {@link #stop()}
+     */
+    void start(final CaptureRequest request, final int count, final long intervalMs) {
+        outstanding.set(0);
+        this.count = count;
+        issued = 0;
+        this.intervalMs = Math.max(0, intervalMs);
+        this.request = request;
+        running = true;
+    }
+
+    /**
+     * Tracks a burst the caller submitted at once, nothing is issued for it.
+     */
+    void startBurst(final int count) {
+        stop();
+        outstanding.set(count);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    long intervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * @return false once every frame of a finite sequence was issued
+     */
+    boolean hasMore() {
+        return count == 0 || issued < count;
+    }
+
+    int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Issues one capture if there is room for it.
+     *
+     * @return false if nothing was issued, because the sequence stopped or is complete, too many
+     * frames are in flight or the capture failed
+     */
+    boolean issue(final CaptureBackend backend, final CameraCaptureSession.CaptureCallback callback) {
+        if (!running || !hasMore() || outstanding.get() >= maxInFlight) {
+            return false;
+        }
+        outstanding.incrementAndGet();
+        try {
+            backend.capture(request, callback);
+            issued++;
+            return true;
+        }
+        catch (CameraAccessException e) {
+            outstanding.decrementAndGet();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Gives up the frame of an interval tick that issued nothing, so the sequence keeps its
+     * schedule and its count.
+     *
+     * @return true if the frame belonged to the sequence and should be counted as dropped
+     */
+    boolean skip() {
+        if (!running || !hasMore()) {
+            return false;
+        }
+        issued++;
+        return true;
+    }
+
+    /**
+     * A frame was written, dropped or lost.
+     *
+     * @return true if a capture should be issued for it right away
+     */
+    boolean done() {
+        outstanding.decrementAndGet();
+        return running && intervalMs == 0;
+    }
+
+    void stop() {
+        running = false;
+        request = null;
+    }
+}
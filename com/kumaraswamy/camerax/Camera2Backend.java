@@ -0,0 +1,210 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraConstrainedHighSpeedCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.InputConfiguration;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.ImageWriter;
+import android.os.Handler;
+import android.util.Size;
+import android.view.Surface;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link CaptureBackend} backed by a camera2 {@link CameraDevice}.
+ */
+final class Camera2Backend implements CaptureBackend {
+    static final Factory FACTORY = new Factory() {
+        public CaptureBackend create(final CameraDevice camera, final Handler handler) {
+            return new Camera2Backend(camera, handler);
+        }
+    };
+
+    private final CameraDevice device;
+    private final Handler handler;
+
+    private ImageReader jpegReader;
+    private volatile CameraCaptureSession session;
+    /**
+     * Callback of the session last asked for; sessions configured for an older request are closed.
+     */
+    private volatile CameraCaptureSession.StateCallback pendingSession;
+    private boolean highSpeed;
+    private ImageWriter inputWriter;
+
+    /**
+     * @param handler handler all session, capture and reader callbacks are delivered on
+     */
+    Camera2Backend(final CameraDevice device, final Handler handler) {
+        this.device = device;
+        this.handler = handler;
+    }
+
+    @Override
+    public void createSession(final List<Surface> outputs, final int format, final Size jpegSize, final int maxImages,
+                              final ImageReader.OnImageAvailableListener imageListener,
+                              final SessionListener sessionListener) throws CameraAccessException {
+        closeSession();
+        device.createCaptureSession(stillSurfaces(outputs, format, jpegSize, maxImages, imageListener),
+                stateCallback(sessionListener), handler);
+    }
+
+    @Override
+    public void createReprocessableSession(final int inputFormat, final Size inputSize, final List<Surface> outputs,
+                                           final int format, final Size jpegSize, final int maxImages,
+                                           final ImageReader.OnImageAvailableListener imageListener,
+                                           final SessionListener sessionListener) throws CameraAccessException {
+        closeSession();
+        device.createReprocessableCaptureSession(
+                new InputConfiguration(inputSize.getWidth(), inputSize.getHeight(), inputFormat),
+                stillSurfaces(outputs, format, jpegSize, maxImages, imageListener), stateCallback(sessionListener), handler);
+    }
+
+    /**
+     * The outputs plus the still reader, which is recreated only when its format or size changed.
+     */
+    private List<Surface> stillSurfaces(final List<Surface> outputs, final int format, final Size jpegSize, final int maxImages,
+                                        final ImageReader.OnImageAvailableListener imageListener) {
+        if (jpegReader == null || jpegReader.getImageFormat() != format || jpegReader.getWidth() != jpegSize.getWidth()
+                || jpegReader.getHeight() != jpegSize.getHeight() || jpegReader.getMaxImages() != maxImages) {
+            closeReader();
+            jpegReader = ImageReader.newInstance(jpegSize.getWidth(), jpegSize.getHeight(), format, maxImages);
+        }
+        jpegReader.setOnImageAvailableListener(imageListener, handler);
+        final List<Surface> surfaces = new ArrayList<>(outputs);
+        surfaces.add(jpegReader.getSurface());
+        highSpeed = false;
+        return surfaces;
+    }
+
+    @Override
+    public void createHighSpeedSession(final List<Surface> outputs, final SessionListener sessionListener) throws CameraAccessException {
+        closeSession();
+        closeReader();
+        highSpeed = true;
+        device.createConstrainedHighSpeedCaptureSession(outputs, stateCallback(sessionListener), handler);
+    }
+
+    private CameraCaptureSession.StateCallback stateCallback(final SessionListener sessionListener) {
+        final CameraCaptureSession.StateCallback callback = new CameraCaptureSession.StateCallback() {
+            public void onConfigured(@NonNull final CameraCaptureSession cameraCaptureSession) {
+                if (pendingSession != this) {
+                    cameraCaptureSession.close();
+                    return;
+                }
+                pendingSession = null;
+                session = cameraCaptureSession;
+                if (cameraCaptureSession.isReprocessable()) {
+                    inputWriter = ImageWriter.newInstance(cameraCaptureSession.getInputSurface(), 2);
+                }
+                sessionListener.onConfigured();
+            }
+
+            public void onConfigureFailed(@NonNull final CameraCaptureSession cameraCaptureSession) {
+                if (pendingSession != this) {
+                    return;
+                }
+                pendingSession = null;
+                sessionListener.onConfigureFailed();
+            }
+        };
+        pendingSession = callback;
+        return callback;
+    }
+
+    @Override
+    public boolean isHighSpeed() {
+        return highSpeed;
+    }
+
+    @Override
+    public boolean isReprocessable() {
+        return inputWriter != null;
+    }
+
+    @Override
+    public CaptureRequest.Builder createReprocessRequest(final TotalCaptureResult result) throws CameraAccessException {
+        return device.createReprocessCaptureRequest(result);
+    }
+
+    @Override
+    public void reprocess(final Image input, final CaptureRequest request, final CameraCaptureSession.CaptureCallback callback) throws CameraAccessException {
+        inputWriter.queueInputImage(input);
+        session.capture(request, callback, handler);
+    }
+
+    @Override
+    public CaptureRequest.Builder createCaptureRequest(final int template) throws CameraAccessException {
+        return device.createCaptureRequest(template);
+    }
+
+    @Override
+    public Surface getJpegSurface() {
+        return jpegReader == null ? null : jpegReader.getSurface();
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return session != null;
+    }
+
+    @Override
+    public void setRepeatingRequest(final CaptureRequest request, final CameraCaptureSession.CaptureCallback callback) throws CameraAccessException {
+        if (highSpeed) {
+            session.setRepeatingBurst(highSpeedList(request), callback, handler);
+        } else {
+            session.setRepeatingRequest(request, callback, handler);
+        }
+    }
+
+    @Override
+    public void capture(final CaptureRequest request, final CameraCaptureSession.CaptureCallback callback) throws CameraAccessException {
+        if (highSpeed) {
+            session.captureBurst(highSpeedList(request), callback, handler);
+        } else {
+            session.capture(request, callback, handler);
+        }
+    }
+
+    private List<CaptureRequest> highSpeedList(final CaptureRequest request) throws CameraAccessException {
+        return ((CameraConstrainedHighSpeedCaptureSession) session).createHighSpeedRequestList(request);
+    }
+
+    @Override
+    public void captureBurst(final List<CaptureRequest> requests, final CameraCaptureSession.CaptureCallback callback) throws CameraAccessException {
+        session.captureBurst(requests, callback, handler);
+    }
+
+    @Override
+    public void close() {
+        closeSession();
+        closeReader();
+    }
+
+    private void closeSession() {
+        pendingSession = null;
+        if (inputWriter != null) {
+            inputWriter.close();
+            inputWriter = null;
+        }
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+    }
+
+    private void closeReader() {
+        if (jpegReader != null) {
+            jpegReader.close();
+            jpegReader = null;
+        }
+    }
+}
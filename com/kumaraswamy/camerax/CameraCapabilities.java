@@ -0,0 +1,246 @@
+package com.kumaraswamy.camerax;
+
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.util.Range;
+import android.util.Size;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the characteristics ProCamera reads, so each camera is queried over
+ * binder only once.
+ */
+final class CameraCapabilities {
+    private static final Size[] NO_SIZES = new Size[0];
+    private static final int[] NO_MODES = new int[0];
+
+    final String cameraId;
+    final Rect sensorRect;
+    final float maxZoom;
+    final float minFocusDistance;
+    final int hardwareLevel;
+    final int sensorOrientation;
+    final int lensFacing;
+    final int maxAfRegions;
+    final int maxAeRegions;
+    final float focalLength;
+    final boolean logicalMultiCamera;
+    final boolean backwardCompatible;
+    final boolean highSpeedVideo;
+    final boolean yuvReprocessing;
+    final boolean privateReprocessing;
+    final boolean realtimeTimestamps;
+
+    private final int[] afModes;
+    private final int[] faceDetectModes;
+    private final int[][] processingModes = new int[CaptureProfile.KEY_COUNT][];
+    private final Size[] previewSizes;
+    private final Size[] videoSizes;
+    private final int[] fpsRanges;
+    private final Size[] highSpeedSizes;
+    private final Map<Size, int[]> highSpeedFpsRanges;
+    private final Map<Integer, Size[]> outputSizes;
+    private final Map<Integer, Size[]> inputSizes;
+
+    private CameraCapabilities(final String cameraId, final CameraCharacteristics characteristics) {
+        this.cameraId = cameraId;
+        final Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        sensorRect = activeArray == null ? new Rect() : new Rect(activeArray);
+        final Float zoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        maxZoom = (zoom == null || zoom < 1.0f) ? 1.0f : zoom;
+        final Float focus = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        minFocusDistance = focus == null ? 0.0f : focus;
+        final Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+        hardwareLevel = level == null ? CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY : level;
+        final Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        sensorOrientation = orientation == null ? 0 : orientation;
+        final Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        lensFacing = facing == null ? CameraCharacteristics.LENS_FACING_BACK : facing;
+        final Integer afRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+        maxAfRegions = afRegions == null ? 0 : afRegions;
+        final Integer aeRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE);
+        maxAeRegions = aeRegions == null ? 0 : aeRegions;
+
+        final float[] focalLengths = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        float shortest = 0.0f;
+        if (focalLengths != null) {
+            for (final float length : focalLengths) {
+                if (shortest == 0.0f || length < shortest) {
+                    shortest = length;
+                }
+            }
+        }
+        focalLength = shortest;
+        final int[] capabilities = modes(characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES));
+        logicalMultiCamera = Build.VERSION.SDK_INT >= 28
+                && contains(capabilities, CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_LOGICAL_MULTI_CAMERA);
+        backwardCompatible = capabilities.length == 0
+                || contains(capabilities, CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_BACKWARD_COMPATIBLE);
+        highSpeedVideo = Build.VERSION.SDK_INT >= 23
+                && contains(capabilities, CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_CONSTRAINED_HIGH_SPEED_VIDEO);
+        yuvReprocessing = Build.VERSION.SDK_INT >= 23
+                && contains(capabilities, CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_YUV_REPROCESSING);
+        privateReprocessing = Build.VERSION.SDK_INT >= 23
+                && contains(capabilities, CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_PRIVATE_REPROCESSING);
+        final Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        realtimeTimestamps = timestampSource != null
+                && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+
+        final Range<Integer>[] ranges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        fpsRanges = flatten(ranges);
+
+        afModes = modes(characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES));
+        faceDetectModes = modes(characteristics.get(CameraCharacteristics.STATISTICS_INFO_AVAILABLE_FACE_DETECT_MODES));
+
+        processingModes[CaptureProfile.EDGE] = modes(characteristics.get(CameraCharacteristics.EDGE_AVAILABLE_EDGE_MODES));
+        processingModes[CaptureProfile.SHADING] = Build.VERSION.SDK_INT >= 23
+                ? modes(characteristics.get(CameraCharacteristics.SHADING_AVAILABLE_MODES)) : NO_MODES;
+        processingModes[CaptureProfile.TONEMAP] = modes(characteristics.get(CameraCharacteristics.TONEMAP_AVAILABLE_TONE_MAP_MODES));
+        processingModes[CaptureProfile.ABERRATION] = modes(characteristics.get(CameraCharacteristics.COLOR_CORRECTION_AVAILABLE_ABERRATION_MODES));
+        // color correction modes are not listed, LEGACY devices ignore the key
+        processingModes[CaptureProfile.COLOR_CORRECTION] = hardwareLevel == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY
+                ? NO_MODES : null;
+        processingModes[CaptureProfile.HOT_PIXEL] = modes(characteristics.get(CameraCharacteristics.HOT_PIXEL_AVAILABLE_HOT_PIXEL_MODES));
+        processingModes[CaptureProfile.STABILIZATION] = modes(characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_OPTICAL_STABILIZATION));
+
+        final StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        final Map<Integer, Size[]> sizes = new HashMap<>();
+        final Map<Integer, Size[]> inputs = new HashMap<>();
+        Size[] preview = null;
+        Size[] video = null;
+        final Map<Size, int[]> highSpeed = new HashMap<>();
+        if (map != null) {
+            for (final int format : map.getOutputFormats()) {
+                final Size[] formatSizes = map.getOutputSizes(format);
+                if (formatSizes != null) {
+                    sizes.put(format, formatSizes);
+                }
+            }
+            preview = map.getOutputSizes(SurfaceTexture.class);
+            video = map.getOutputSizes(MediaRecorder.class);
+            if (yuvReprocessing || privateReprocessing) {
+                for (final int format : map.getInputFormats()) {
+                    final Size[] formatSizes = map.getInputSizes(format);
+                    if (formatSizes != null) {
+                        inputs.put(format, formatSizes);
+                    }
+                }
+            }
+            if (highSpeedVideo) {
+                for (final Size size : map.getHighSpeedVideoSizes()) {
+                    highSpeed.put(size, flatten(map.getHighSpeedVideoFpsRangesFor(size)));
+                }
+            }
+        }
+        highSpeedSizes = highSpeed.keySet().toArray(new Size[0]);
+        highSpeedFpsRanges = Collections.unmodifiableMap(highSpeed);
+        previewSizes = preview == null ? NO_SIZES : preview;
+        videoSizes = video == null ? NO_SIZES : video;
+        outputSizes = Collections.unmodifiableMap(sizes);
+        inputSizes = Collections.unmodifiableMap(inputs);
+    }
+
+    static CameraCapabilities load(final CameraManager manager, final String cameraId) throws CameraAccessException {
+        return new CameraCapabilities(cameraId, manager.getCameraCharacteristics(cameraId));
+    }
+
+    CameraResolver.Lens lens() {
+        final int facing = lensFacing == CameraCharacteristics.LENS_FACING_FRONT ? CameraResolver.FACING_FRONT
+                : lensFacing == CameraCharacteristics.LENS_FACING_BACK ? CameraResolver.FACING_BACK : -1;
+        return new CameraResolver.Lens(cameraId, facing, focalLength, hardwareLevel, logicalMultiCamera, backwardCompatible);
+    }
+
+    boolean hasZoomSupport() {
+        return Float.compare(maxZoom, 1.0f) > 0;
+    }
+
+    Size[] previewSizes() {
+        return previewSizes.clone();
+    }
+
+    Size[] videoSizes() {
+        return videoSizes.clone();
+    }
+
+    /**
+     * AE target frame rate ranges as lower and upper bound pairs.
+     */
+    int[] fpsRanges() {
+        return fpsRanges.clone();
+    }
+
+    /**
+     * Sizes a constrained high-speed session can stream, empty if the camera has none.
+     */
+    Size[] highSpeedSizes() {
+        return highSpeedSizes.clone();
+    }
+
+    /**
+     * High-speed frame rate ranges for one of {@link #highSpeedSizes()}, as lower and upper
+     * bound pairs.
+     */
+    int[] highSpeedFpsRanges(final Size size) {
+        final int[] ranges = highSpeedFpsRanges.get(size);
+        return ranges == null ? NO_MODES : ranges.clone();
+    }
+
+    Size[] outputSizes(final int format) {
+        final Size[] sizes = outputSizes.get(format);
+        return sizes == null ? NO_SIZES : sizes.clone();
+    }
+
+    /**
+     * Sizes a reprocessable session accepts as input in the format, empty without reprocessing.
+     */
+    Size[] inputSizes(final int format) {
+        final Size[] sizes = inputSizes.get(format);
+        return sizes == null ? NO_SIZES : sizes.clone();
+    }
+
+    boolean supportsAfMode(final int mode) {
+        return contains(afModes, mode);
+    }
+
+    /**
+     * The processing modes the camera lists, indexed by the {@link CaptureProfile} keys.
+     */
+    int[][] processingModes() {
+        return processingModes;
+    }
+
+    boolean supportsFaceDetectMode(final int mode) {
+        return contains(faceDetectModes, mode);
+    }
+
+    static boolean contains(final int[] values, final int value) {
+        for (final int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] flatten(final Range<Integer>[] ranges) {
+        final int[] flat = new int[ranges == null ? 0 : 2 * ranges.length];
+        for (int i = 0; i < flat.length / 2; i++) {
+            flat[2 * i] = ranges[i].getLower();
+            flat[2 * i + 1] = ranges[i].getUpper();
+        }
+        return flat;
+    }
+
+    private static int[] modes(final int[] modes) {
+        return modes == null ? NO_MODES : modes.clone();
+    }
+}
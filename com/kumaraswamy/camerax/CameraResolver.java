@@ -0,0 +1,126 @@
+package com.kumaraswamy.camerax;
+
+import java.util.List;
+
+/**
+ * Picks a camera id for a camera type from an enumeration of lenses, instead of indexing the
+ * camera id list. Only plain values are used so it has no Android dependencies.
+ */
+final class CameraResolver {
+    static final int TYPE_FRONT = 0;
+    static final int TYPE_REAR = 1;
+    static final int TYPE_ULTRA_WIDE = 2;
+    static final int TYPE_TELE = 3;
+
+    static final int FACING_FRONT = 0;
+    static final int FACING_BACK = 1;
+
+    private CameraResolver() {
+    }
+
+    /**
+     * One enumerated camera.
+     */
+    static final class Lens {
+        final String id;
+        final int facing;
+        final float focalLength;
+        final int hardwareLevel;
+        final boolean logicalMultiCamera;
+        final boolean backwardCompatible;
+
+        Lens(final String id, final int facing, final float focalLength, final int hardwareLevel,
+             final boolean logicalMultiCamera, final boolean backwardCompatible) {
+            this.id = id;
+            this.facing = facing;
+            this.focalLength = focalLength;
+            this.hardwareLevel = hardwareLevel;
+            this.logicalMultiCamera = logicalMultiCamera;
+            this.backwardCompatible = backwardCompatible;
+        }
+    }
+
+    /**
+     * @return the lens for the type, the main lens of that side when there is no such lens,
+     * any usable lens when the side has none, or null when there is no camera at all
+     */
+    static Lens resolve(final List<Lens> lenses, final int type) {
+        final int facing = type == TYPE_FRONT ? FACING_FRONT : FACING_BACK;
+        Lens main = main(lenses, facing);
+        if (main == null) {
+            main = main(lenses, type == TYPE_FRONT ? FACING_BACK : FACING_FRONT);
+        }
+        if (main == null) {
+            return lenses.isEmpty() ? null : lenses.get(0);
+        }
+        if (type == TYPE_ULTRA_WIDE || type == TYPE_TELE) {
+            final Lens lens = byFocalLength(lenses, main, type == TYPE_TELE);
+            if (lens != null) {
+                return lens;
+            }
+        }
+        return main;
+    }
+
+    /**
+     * The camera type a lens is picked for, or -1 if it is none of the types.
+     */
+    static int typeOf(final List<Lens> lenses, final Lens lens) {
+        if (lens == resolve(lenses, TYPE_FRONT)) {
+            return TYPE_FRONT;
+        }
+        if (lens == resolve(lenses, TYPE_REAR)) {
+            return TYPE_REAR;
+        }
+        final Lens main = main(lenses, FACING_BACK);
+        if (main != null && lens == byFocalLength(lenses, main, false)) {
+            return TYPE_ULTRA_WIDE;
+        }
+        if (main != null && lens == byFocalLength(lenses, main, true)) {
+            return TYPE_TELE;
+        }
+        return -1;
+    }
+
+    /**
+     * The main lens of a side: the logical multi-camera if the side has one, else the first
+     * listed, which by convention is the main lens. Physical lenses behind a logical camera are
+     * only reached through {@link #byFocalLength}.
+     */
+    private static Lens main(final List<Lens> lenses, final int facing) {
+        Lens first = null;
+        for (final Lens lens : lenses) {
+            if (lens.facing != facing || !lens.backwardCompatible) {
+                continue;
+            }
+            if (lens.logicalMultiCamera) {
+                return lens;
+            }
+            if (first == null) {
+                first = lens;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * The lens on the same side as {@code main} with the longest focal length above it for
+     * tele, or the shortest below it for ultra-wide.
+     */
+    private static Lens byFocalLength(final List<Lens> lenses, final Lens main, final boolean tele) {
+        Lens best = null;
+        for (final Lens lens : lenses) {
+            if (lens == main || lens.facing != main.facing || !lens.backwardCompatible || lens.focalLength <= 0) {
+                continue;
+            }
+            final boolean candidate = tele ? lens.focalLength > main.focalLength : lens.focalLength < main.focalLength;
+            if (!candidate) {
+                continue;
+            }
+            if (best == null || (tele ? lens.focalLength > best.focalLength : lens.focalLength < best.focalLength)) {
+                best = lens;
+            }
+        }
+        return best;
+    }
+}
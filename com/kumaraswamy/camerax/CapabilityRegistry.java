@@ -0,0 +1,46 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads {@link CameraCapabilities} once per camera id and hands out the cached snapshot after.
+ */
+final class CapabilityRegistry {
+    private final CameraManager manager;
+    private final Map<String, CameraCapabilities> snapshots = new HashMap<>();
+    private List<CameraResolver.Lens> lenses;
+
+    CapabilityRegistry(final CameraManager manager) {
+        this.manager = manager;
+    }
+
+    synchronized CameraCapabilities get(final String cameraId) throws CameraAccessException {
+        CameraCapabilities capabilities = snapshots.get(cameraId);
+        if (capabilities == null) {
+            capabilities = CameraCapabilities.load(manager, cameraId);
+            snapshots.put(cameraId, capabilities);
+        }
+        return capabilities;
+    }
+
+    /**
+     * Every camera on the device in the order they are listed, enumerated on first use.
+     */
+    synchronized List<CameraResolver.Lens> lenses() throws CameraAccessException {
+        if (lenses == null) {
+            final List<CameraResolver.Lens> all = new ArrayList<>();
+            for (final String cameraId : manager.getCameraIdList()) {
+                all.add(get(cameraId).lens());
+            }
+            lenses = Collections.unmodifiableList(all);
+        }
+        return lenses;
+    }
+}
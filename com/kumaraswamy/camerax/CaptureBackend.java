@@ -0,0 +1,96 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Size;
+import android.view.Surface;
+
+import java.util.List;
+
+/**
+ * Owns the long-lived capture session and the JPEG reader attached to it, so a still can be
+ * taken with a plain capture instead of reconfiguring the session for every shot.
+ */
+interface CaptureBackend {
+
+    /**
+     * Makes the backend for an opened camera, replaced in tests.
+     */
+    interface Factory {
+        /**
+         * @param handler handler all session, capture and reader callbacks are delivered on
+         */
+        CaptureBackend create(CameraDevice camera, Handler handler);
+    }
+
+    interface SessionListener {
+        void onConfigured();
+
+        void onConfigureFailed();
+    }
+
+    /**
+     * Configures a session holding the given outputs and a still reader of the given format and
+     * size. The reader is kept across sessions as long as the format, size and pool size stay
+     * the same.
+     *
+     * @param outputs   preview and any other non-still surfaces
+     * @param format    encoded still format, JPEG or HEIC
+     * @param maxImages number of still buffers the reader can hold at once
+     */
+    void createSession(List<Surface> outputs, int format, Size jpegSize, int maxImages,
+                       ImageReader.OnImageAvailableListener imageListener,
+                       SessionListener sessionListener) throws CameraAccessException;
+
+    /**
+     * Configures a constrained high-speed session for the given outputs, which must all have
+     * the same high-speed size. The session has no still reader; requests sent to it are expanded
+     * into high-speed request lists, so the frame rate range they carry decides the rate.
+     *
+     * @param outputs preview and at most one recording surface
+     */
+    void createHighSpeedSession(List<Surface> outputs, SessionListener sessionListener) throws CameraAccessException;
+
+    boolean isHighSpeed();
+
+    /**
+     * Like {@link #createSession}, but the session also takes frames of the given input format
+     * and size back in for reprocessing into stills.
+     */
+    void createReprocessableSession(int inputFormat, Size inputSize, List<Surface> outputs, int format, Size jpegSize,
+                                    int maxImages, ImageReader.OnImageAvailableListener imageListener,
+                                    SessionListener sessionListener) throws CameraAccessException;
+
+    boolean isReprocessable();
+
+    CaptureRequest.Builder createReprocessRequest(TotalCaptureResult result) throws CameraAccessException;
+
+    /**
+     * Queues a frame as reprocessing input and submits the request made for it. The frame is
+     * closed by the session.
+     */
+    void reprocess(Image input, CaptureRequest request, CameraCaptureSession.CaptureCallback callback) throws CameraAccessException;
+
+    CaptureRequest.Builder createCaptureRequest(int template) throws CameraAccessException;
+
+    Surface getJpegSurface();
+
+    boolean isConfigured();
+
+    void setRepeatingRequest(CaptureRequest request, CameraCaptureSession.CaptureCallback callback) throws CameraAccessException;
+
+    void capture(CaptureRequest request, CameraCaptureSession.CaptureCallback callback) throws CameraAccessException;
+
+    void captureBurst(List<CaptureRequest> requests, CameraCaptureSession.CaptureCallback callback) throws CameraAccessException;
+
+    /**
+     * Closes the session and the reader; the camera device itself stays with the caller.
+     */
+    void close();
+}
@@ -0,0 +1,127 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Admission control for burst and continuous capture. At most {@code maxInFlight} frames are
+ * being written at once; frames arriving while the pipeline is full are dropped instead of
+ * stalling the camera, and are reported in the completion count.
+ */
+final class CapturePipeline {
+    static final int SKIPPED = -1;
+    static final int DROPPED = -2;
+
+    private final int maxInFlight;
+
+    private boolean active;
+    private boolean stopRequested;
+    private int targetFrames;
+
+    private int slots;
+    private int inFlight;
+    private int saved;
+    private int dropped;
+
+    CapturePipeline(final int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Starts a new sequence.
+     *
+     * @param frames number of frames to take, or 0 to run until {@link #stop()}
+     */
+    synchronized void start(final int frames) {
+        active = true;
+        stopRequested = false;
+        targetFrames = Math.max(0, frames);
+        slots = inFlight = saved = dropped = 0;
+    }
+
+    synchronized boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Every frame slot of a finite sequence has been taken, so the camera may stop producing.
+     */
+    synchronized boolean isFilled() {
+        return targetFrames > 0 && slots >= targetFrames;
+    }
+
+    /**
+     * Offers a frame that arrived from the camera.
+     *
+     * @return the frame index if the frame should be written, otherwise {@link #SKIPPED} when
+     * the frame is not part of the sequence or {@link #DROPPED} when the writer is behind
+     */
+    synchronized int offer() {
+        if (!active || stopRequested || isFilled()) {
+            return SKIPPED;
+        }
+        if (inFlight >= maxInFlight) {
+            slots++;
+            dropped++;
+            return DROPPED;
+        }
+        inFlight++;
+        return slots++;
+    }
+
+    /**
+     * Counts a frame the camera failed to deliver, or that was never issued because the writer
+     * was behind.
+     *
+     * @return true if this completed the sequence
+     */
+    synchronized boolean fail() {
+        if (!active || stopRequested || isFilled()) {
+            return false;
+        }
+        slots++;
+        dropped++;
+        return finish();
+    }
+
+    /**
+     * Marks an admitted frame as done.
+     *
+     * @return true if this completed the sequence
+     */
+    synchronized boolean complete(final boolean written) {
+        inFlight--;
+        if (written) {
+            saved++;
+        } else {
+            dropped++;
+        }
+        return finish();
+    }
+
+    /**
+     * Ends a continuous sequence; frames still being written are waited for.
+     *
+     * @return true if the sequence completed right away
+     */
+    synchronized boolean stop() {
+        if (!active) {
+            return false;
+        }
+        stopRequested = true;
+        return finish();
+    }
+
+    synchronized int saved() {
+        return saved;
+    }
+
+    synchronized int dropped() {
+        return dropped;
+    }
+
+    private boolean finish() {
+        if (active && (stopRequested || isFilled()) && inFlight == 0) {
+            active = false;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Chooses the post-processing modes of the preview and still requests for a profile. The
+ * preview stays on FAST processing so it keeps its frame rate, HIGH_QUALITY is only asked for
+ * on stills. Every mode is checked against the modes the camera lists, falling back from
+ * HIGH_QUALITY to FAST and else leaving the template default.
+ */
+final class CaptureProfile {
+    static final int SPEED = 0;
+    static final int BALANCED = 1;
+    static final int QUALITY = 2;
+
+    static final int EDGE = 0;
+    static final int SHADING = 1;
+    static final int TONEMAP = 2;
+    static final int ABERRATION = 3;
+    static final int COLOR_CORRECTION = 4;
+    static final int HOT_PIXEL = 5;
+    static final int STABILIZATION = 6;
+    static final int KEY_COUNT = 7;
+
+    /**
+     * Leave the key to the template.
+     */
+    static final int UNSET = -1;
+
+    private static final int OFF = 0;
+    private static final int FAST = 1;
+    private static final int HIGH_QUALITY = 2;
+    private static final int STABILIZATION_ON = 1;
+
+    private CaptureProfile() {
+    }
+
+    /**
+     * @param available modes listed by the camera per key, a null entry means the camera has no
+     *                  list for the key and FAST and HIGH_QUALITY are assumed
+     * @param out       receives the mode per key, or {@link #UNSET}
+     */
+    static void select(final int profile, final boolean still, final int[][] available, final int[] out) {
+        final int processing;
+        if (profile == SPEED) {
+            processing = still ? FAST : UNSET;
+        } else {
+            processing = still ? HIGH_QUALITY : FAST;
+        }
+        for (int key = 0; key < STABILIZATION; key++) {
+            out[key] = supported(available[key], processing);
+        }
+        final boolean stabilize = profile == QUALITY || (profile == BALANCED && still);
+        out[STABILIZATION] = stabilize && available[STABILIZATION] != null
+                && contains(available[STABILIZATION], STABILIZATION_ON) ? STABILIZATION_ON : UNSET;
+    }
+
+    private static int supported(final int[] modes, final int wanted) {
+        if (wanted == UNSET) {
+            return UNSET;
+        }
+        if (modes == null) {
+            return wanted;
+        }
+        for (int mode = wanted; mode > OFF; mode--) {
+            if (contains(modes, mode)) {
+                return mode;
+            }
+        }
+        return UNSET;
+    }
+
+    private static boolean contains(final int[] modes, final int mode) {
+        for (final int m : modes) {
+            if (m == mode) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package com.kumaraswamy.camerax;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a buffer straight to a {@link FileChannel}, so a direct image plane reaches the disk
+ * without being staged through a heap array.
+ */
+final class ChannelWriter {
+
+    private ChannelWriter() {
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer to the path, replacing any existing file.
+     *
+     * @param preallocate reserve the full length up front so the file system can lay it out
+     *                    in one extent
+     * @param sync        flush the data to storage before returning
+     */
+    static void write(final ByteBuffer buffer, final String path,
+                      final boolean preallocate, final boolean sync) throws IOException {
+        write(new ByteBuffer[]{buffer}, path, preallocate, sync);
+    }
+
+    /**
+     * Writes the remaining bytes of the buffers one after the other in a gathering write, so a
+     * picture can be written with a part of it replaced.
+     */
+    static void write(final ByteBuffer[] buffers, final String path,
+                      final boolean preallocate, final boolean sync) throws IOException {
+        long length = 0;
+        for (final ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        try (FileOutputStream stream = new FileOutputStream(path);
+             FileChannel channel = stream.getChannel()) {
+            if (preallocate) {
+                preallocate(stream.getFD(), length);
+            }
+            while (length > 0) {
+                length -= channel.write(buffers);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        }
+    }
+
+    private static void preallocate(final FileDescriptor fd, final long length) {
+        try {
+            Os.posix_fallocate(fd, 0, length);
+        } catch (ErrnoException e) {
+            // not supported by every file system, the write still works without it
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Serializes opening and closing the camera device. Requests only record whether the device
+ * is wanted; the device is opened or closed once the previous open or close has finished, so
+ * a quick pause and resume cannot open a second device or leave one open.
+ */
+final class DeviceLifecycle {
+    static final int CLOSED = 0;
+    static final int OPENING = 1;
+    static final int OPENED = 2;
+    static final int CLOSING = 3;
+
+    private int state = CLOSED;
+    private boolean wanted;
+    private boolean stale;
+
+    int state() {
+        return state;
+    }
+
+    boolean isOpened() {
+        return state == OPENED;
+    }
+
+    /**
+     * @return true if the device has to be opened now
+     */
+    boolean requestOpen() {
+        wanted = true;
+        if (state != CLOSED) {
+            return false;
+        }
+        state = OPENING;
+        return true;
+    }
+
+    /**
+     * @return true if the open device has to be closed now, a device that is still opening is
+     * closed as soon as it arrives
+     */
+    boolean requestClose() {
+        wanted = false;
+        if (state != OPENED) {
+            return false;
+        }
+        state = CLOSING;
+        return true;
+    }
+
+    /**
+     * Another camera is wanted.
+     *
+     * @return true if the open device is given up and the new one has to be opened now, the
+     * old device is closed outside of this machine
+     */
+    boolean requestSwitch() {
+        if (state == OPENED) {
+            state = OPENING;
+            return true;
+        }
+        if (state == OPENING) {
+            stale = true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true to keep the device, false if it is no longer wanted or stale and has to be
+     * closed, which the machine then waits for
+     */
+    boolean onOpened() {
+        if (state != OPENING) {
+            return false;
+        }
+        if (!wanted || stale) {
+            stale = false;
+            state = CLOSING;
+            return false;
+        }
+        state = OPENED;
+        return true;
+    }
+
+    /**
+     * The device could not be opened, or the open was given up before it started.
+     *
+     * @param retry keep it wanted, so the next {@link #requestOpen} opens it
+     */
+    void onOpenFailed(final boolean retry) {
+        state = CLOSED;
+        stale = false;
+        wanted = wanted && retry;
+    }
+
+    /**
+     * The device was disconnected or failed, it is being closed and is not reopened on its own.
+     */
+    void onLost() {
+        wanted = false;
+        state = CLOSING;
+    }
+
+    /**
+     * @return true if the device is wanted again and has to be opened now
+     */
+    boolean onClosed() {
+        state = CLOSED;
+        if (wanted) {
+            state = OPENING;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets everything, callbacks still in flight are ignored by the caller.
+     */
+    void reset() {
+        state = CLOSED;
+        wanted = false;
+        stale = false;
+    }
+}
@@ -0,0 +1,142 @@
+package com.kumaraswamy.camerax;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sets the EXIF orientation of an encoded JPEG without decoding or copying it to the heap. The
+ * picture is returned as parts to be written one after the other: when the JPEG has an
+ * orientation tag only its value is swapped, otherwise a minimal EXIF segment is put after the
+ * start of image marker. The source buffer is not modified.
+ */
+final class ExifOrientation {
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+    private static final int MARKER_APP1 = 0xe1;
+    private static final int MARKER_SOS = 0xda;
+    private static final int MARKER_EOI = 0xd9;
+
+    /**
+     * Bytes a picture without an orientation tag grows by.
+     */
+    static final int SEGMENT_LENGTH = 36;
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * Splits the remaining bytes of the JPEG into parts that carry the orientation for a
+     * clockwise rotation.
+     *
+     * @return the source alone if it is not a JPEG
+     */
+    static ByteBuffer[] split(final ByteBuffer jpeg, final int degrees) {
+        final int orientation = OrientationMath.exifOrientation(degrees);
+        final int start = jpeg.position();
+        final int end = jpeg.limit();
+        if (end - start < 4 || (jpeg.get(start) & 0xff) != 0xff || (jpeg.get(start + 1) & 0xff) != 0xd8) {
+            return new ByteBuffer[]{jpeg};
+        }
+        final int value = valueOffset(jpeg, start, end);
+        if (value >= 0) {
+            // the tag of the entry, 0x0112, shows the byte order
+            final boolean littleEndian = jpeg.get(value - 8) == 0x12;
+            final ByteBuffer patch = ByteBuffer.allocate(2);
+            patch.put(0, (byte) (littleEndian ? orientation : 0));
+            patch.put(1, (byte) (littleEndian ? 0 : orientation));
+            return new ByteBuffer[]{range(jpeg, start, value), patch, range(jpeg, value + 2, end)};
+        }
+        final ByteBuffer segment = ByteBuffer.allocate(SEGMENT_LENGTH);
+        segment.put((byte) 0xff).put((byte) MARKER_APP1).putShort((short) (SEGMENT_LENGTH - 2))
+                .put(new byte[]{'E', 'x', 'i', 'f', 0, 0})
+                .put(new byte[]{'M', 'M', 0, 42}).putInt(8)
+                .putShort((short) 1)
+                .putShort((short) TAG_ORIENTATION).putShort((short) TYPE_SHORT).putInt(1)
+                .putShort((short) orientation).putShort((short) 0)
+                .putInt(0);
+        segment.flip();
+        return new ByteBuffer[]{range(jpeg, start, start + 2), segment, range(jpeg, start + 2, end)};
+    }
+
+    static int length(final ByteBuffer[] parts) {
+        int length = 0;
+        for (final ByteBuffer part : parts) {
+            length += part.remaining();
+        }
+        return length;
+    }
+
+    /**
+     * Finds the value of the orientation entry in the first IFD of the EXIF segment.
+     *
+     * @return the absolute offset of the two value bytes, or -1
+     */
+    private static int valueOffset(final ByteBuffer jpeg, final int start, final int end) {
+        int at = start + 2;
+        while (at + 4 <= end) {
+            if ((jpeg.get(at) & 0xff) != 0xff) {
+                return -1;
+            }
+            final int marker = jpeg.get(at + 1) & 0xff;
+            if (marker == 0xff) {
+                at++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return -1;
+            }
+            final int segmentEnd = at + 2 + (int) unsigned(jpeg, at + 2, 2, false);
+            if (segmentEnd > end) {
+                return -1;
+            }
+            if (marker == MARKER_APP1 && isExif(jpeg, at + 4, segmentEnd)) {
+                return entryValue(jpeg, at + 10, segmentEnd);
+            }
+            at = segmentEnd;
+        }
+        return -1;
+    }
+
+    private static boolean isExif(final ByteBuffer jpeg, final int at, final int end) {
+        return at + 6 <= end && jpeg.get(at) == 'E' && jpeg.get(at + 1) == 'x' && jpeg.get(at + 2) == 'i'
+                && jpeg.get(at + 3) == 'f' && jpeg.get(at + 4) == 0 && jpeg.get(at + 5) == 0;
+    }
+
+    private static int entryValue(final ByteBuffer jpeg, final int tiff, final int end) {
+        if (tiff + 8 > end) {
+            return -1;
+        }
+        final boolean littleEndian = jpeg.get(tiff) == 'I';
+        final long ifd = unsigned(jpeg, tiff + 4, 4, littleEndian);
+        if (ifd < 8 || tiff + ifd + 2 > end) {
+            return -1;
+        }
+        final int first = (int) (tiff + ifd);
+        final int entries = (int) unsigned(jpeg, first, 2, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            final int entry = first + 2 + i * 12;
+            if (entry + 12 > end) {
+                return -1;
+            }
+            if (unsigned(jpeg, entry, 2, littleEndian) == TAG_ORIENTATION) {
+                return unsigned(jpeg, entry + 2, 2, littleEndian) == TYPE_SHORT
+                        && unsigned(jpeg, entry + 4, 4, littleEndian) == 1 ? entry + 8 : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static long unsigned(final ByteBuffer jpeg, final int at, final int bytes, final boolean littleEndian) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            final int b = jpeg.get(littleEndian ? at + bytes - 1 - i : at + i) & 0xff;
+            value = value << 8 | b;
+        }
+        return value;
+    }
+
+    private static ByteBuffer range(final ByteBuffer jpeg, final int from, final int to) {
+        final ByteBuffer range = jpeg.duplicate();
+        range.limit(to).position(from);
+        return range;
+    }
+}
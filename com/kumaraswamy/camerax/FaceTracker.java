@@ -0,0 +1,119 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Collects the faces of each preview result into fixed arrays and decides when they changed
+ * enough to be reported. Results are staged on the camera thread and the last reported faces
+ * are copied out on the UI thread, nothing is allocated per frame.
+ */
+final class FaceTracker {
+    static final int MAX_FACES = 10;
+
+    private final int[] staged = new int[MAX_FACES * 4];
+    private final int[] stagedScores = new int[MAX_FACES];
+    private int stagedCount;
+
+    private final int[] reported = new int[MAX_FACES * 4];
+    private final int[] reportedScores = new int[MAX_FACES];
+    private int reportedCount;
+    private long reportedAt;
+    private boolean hasReported;
+
+    private final long intervalNanos;
+    private final int tolerance;
+
+    /**
+     * @param intervalMillis shortest time between two reports
+     * @param tolerance      how far in sensor pixels a face edge has to move to count as a change
+     */
+    FaceTracker(final long intervalMillis, final int tolerance) {
+        this.intervalNanos = intervalMillis * 1_000_000L;
+        this.tolerance = tolerance;
+    }
+
+    synchronized void begin() {
+        stagedCount = 0;
+    }
+
+    /**
+     * Stages a face in sensor coordinates, faces past {@link #MAX_FACES} are ignored.
+     */
+    synchronized void add(final int left, final int top, final int right, final int bottom, final int score) {
+        if (stagedCount == MAX_FACES) {
+            return;
+        }
+        final int i = stagedCount * 4;
+        staged[i] = left;
+        staged[i + 1] = top;
+        staged[i + 2] = right;
+        staged[i + 3] = bottom;
+        stagedScores[stagedCount++] = score;
+    }
+
+    /**
+     * @return true if the staged faces differ from the last reported ones and the interval
+     * passed, they then become the reported faces
+     */
+    synchronized boolean end(final long nowNanos) {
+        if (hasReported && (!changed() || nowNanos - reportedAt < intervalNanos)) {
+            return false;
+        }
+        System.arraycopy(staged, 0, reported, 0, stagedCount * 4);
+        System.arraycopy(stagedScores, 0, reportedScores, 0, stagedCount);
+        reportedCount = stagedCount;
+        reportedAt = nowNanos;
+        hasReported = true;
+        return true;
+    }
+
+    private boolean changed() {
+        if (stagedCount != reportedCount) {
+            return true;
+        }
+        for (int i = 0; i < stagedCount * 4; i++) {
+            if (Math.abs(staged[i] - reported[i]) > tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the reported faces out.
+     *
+     * @param rects  receives left, top, right, bottom per face, {@code MAX_FACES * 4} long
+     * @param scores receives the score per face, {@code MAX_FACES} long
+     * @return the number of faces
+     */
+    synchronized int copyReported(final int[] rects, final int[] scores) {
+        System.arraycopy(reported, 0, rects, 0, reportedCount * 4);
+        System.arraycopy(reportedScores, 0, scores, 0, reportedCount);
+        return reportedCount;
+    }
+
+    /**
+     * Forgets the reported faces, so the next result is reported.
+     */
+    synchronized void reset() {
+        stagedCount = 0;
+        reportedCount = 0;
+        hasReported = false;
+    }
+
+    /**
+     * The face to meter on: highest score, the larger one on a tie.
+     *
+     * @return the index into {@code rects}, -1 if there are no faces
+     */
+    static int dominant(final int[] rects, final int[] scores, final int count) {
+        int best = -1;
+        long bestArea = 0;
+        for (int i = 0; i < count; i++) {
+            final long area = (long) (rects[i * 4 + 2] - rects[i * 4]) * (rects[i * 4 + 3] - rects[i * 4 + 1]);
+            if (best < 0 || scores[i] > scores[best] || scores[i] == scores[best] && area > bestArea) {
+                best = i;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,115 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Tracks an AF trigger plus AE precapture sequence from the capture results of the repeating
+ * request, until both have settled or the timeout runs out. States are the raw values of
+ * {@code CaptureResult.CONTROL_AF_STATE} and {@code CONTROL_AE_STATE}, null when the device
+ * does not report them.
+ */
+final class FocusStateMachine {
+    static final int IDLE = 0;
+    static final int PENDING = 1;
+    static final int LOCKED = 2;
+    static final int TIMED_OUT = 3;
+
+    static final int AF_STATE_FOCUSED_LOCKED = 4;
+    static final int AF_STATE_NOT_FOCUSED_LOCKED = 5;
+    static final int AE_STATE_PRECAPTURE = 5;
+
+    private int state = IDLE;
+    private boolean armed;
+    private boolean waitForAf;
+    private boolean waitForAe;
+    private long startedAt;
+    private long timeoutNanos;
+
+    private boolean focused;
+    private long afSettledAt;
+    private long aeSettledAt;
+
+    /**
+     * Starts a new sequence, replacing one that is still pending.
+     *
+     * @param waitForAf wait for the AF trigger to lock
+     * @param waitForAe wait for the AE precapture to finish
+     */
+    synchronized void start(final long nowNanos, final long timeoutMs, final boolean waitForAf, final boolean waitForAe) {
+        state = PENDING;
+        armed = false;
+        this.waitForAf = waitForAf;
+        this.waitForAe = waitForAe;
+        startedAt = nowNanos;
+        timeoutNanos = timeoutMs * 1_000_000L;
+        focused = false;
+        afSettledAt = aeSettledAt = 0;
+    }
+
+    /**
+     * The trigger request has completed, results from here on reflect it.
+     */
+    synchronized void arm() {
+        if (state == PENDING) {
+            armed = true;
+        }
+    }
+
+    synchronized void cancel() {
+        state = IDLE;
+    }
+
+    synchronized int state() {
+        return state;
+    }
+
+    /**
+     * Feeds the states of one capture result.
+     *
+     * @return the state after this result, {@link #LOCKED} or {@link #TIMED_OUT} are returned
+     * once, after which the machine is idle again
+     */
+    synchronized int onResult(final Integer afState, final Integer aeState, final long nowNanos) {
+        if (state != PENDING) {
+            return state;
+        }
+        if (armed) {
+            if (afSettledAt == 0 && (!waitForAf || afState == null
+                    || afState == AF_STATE_FOCUSED_LOCKED || afState == AF_STATE_NOT_FOCUSED_LOCKED)) {
+                afSettledAt = nowNanos;
+                focused = !waitForAf || afState == null || afState == AF_STATE_FOCUSED_LOCKED;
+            }
+            if (aeSettledAt == 0 && (!waitForAe || aeState == null || aeState != AE_STATE_PRECAPTURE)) {
+                aeSettledAt = nowNanos;
+            }
+            if (afSettledAt != 0 && aeSettledAt != 0) {
+                state = IDLE;
+                return LOCKED;
+            }
+        }
+        if (nowNanos - startedAt >= timeoutNanos) {
+            state = IDLE;
+            return TIMED_OUT;
+        }
+        return PENDING;
+    }
+
+    /**
+     * Whether AF ended focused, valid after {@link #LOCKED} was returned.
+     */
+    synchronized boolean isFocused() {
+        return focused;
+    }
+
+    /**
+     * Time from start until AF settled, or -1 if it did not.
+     */
+    synchronized long afNanos() {
+        return afSettledAt == 0 ? -1 : afSettledAt - startedAt;
+    }
+
+    /**
+     * Time from start until AE settled, or -1 if it did not.
+     */
+    synchronized long aeNanos() {
+        return aeSettledAt == 0 ? -1 : aeSettledAt - startedAt;
+    }
+}
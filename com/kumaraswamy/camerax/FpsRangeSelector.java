@@ -0,0 +1,70 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Picks an AE target frame rate range. Ranges are given as lower and upper bound pairs, the
+ * way {@link CameraCapabilities#fpsRanges()} returns them, and the result is the offset of the
+ * chosen pair or -1.
+ */
+final class FpsRangeSelector {
+
+    private FpsRangeSelector() {
+    }
+
+    /**
+     * A range reaching the target that keeps the frame rate as steady as possible: the one ending
+     * at the target with the highest lower bound, else the narrowest holding it. If no range
+     * holds the target the fastest one below it is used, and failing that the slowest above it.
+     */
+    static int select(final int[] ranges, final int target) {
+        int best = -1;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i + 1] == target && (best < 0 || ranges[i] > ranges[best])) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            return best;
+        }
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] <= target && target <= ranges[i + 1] && (best < 0 || ranges[i] > ranges[best]
+                    || ranges[i] == ranges[best] && ranges[i + 1] < ranges[best + 1])) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            return best;
+        }
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i + 1] < target && (best < 0 || ranges[i + 1] > ranges[best + 1]
+                    || ranges[i + 1] == ranges[best + 1] && ranges[i] > ranges[best])) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            return best;
+        }
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (best < 0 || ranges[i + 1] < ranges[best + 1]
+                    || ranges[i + 1] == ranges[best + 1] && ranges[i] > ranges[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A high-speed range ending at the target. The fixed one is preferred, a constrained
+     * session only records at a fixed rate.
+     *
+     * @return -1 if no range ends at the target, high-speed rates are not approximated
+     */
+    static int selectHighSpeed(final int[] ranges, final int target) {
+        int best = -1;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i + 1] == target && (best < 0 || ranges[i] > ranges[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,9 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Receives preview frames from the analysis stream of {@link ProCamera}. Called on the analysis
+ * thread; the frame and its buffers are only valid until the call returns.
+ */
+public interface FrameAnalyzer {
+    void analyze(YuvFrame frame);
+}
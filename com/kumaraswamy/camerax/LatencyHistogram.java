@@ -0,0 +1,69 @@
+package com.kumaraswamy.camerax;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free latency histogram. Buckets grow by a quarter power of two from 0.1 ms,
+ * so 64 buckets cover up to about six seconds with under 20% error. Recording only increments
+ * an atomic counter and never allocates.
+ */
+final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+    private static final int STEPS_PER_DOUBLING = 4;
+    private static final long BASE_NANOS = 100_000L;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(final long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+    }
+
+    static int bucket(final long nanos) {
+        if (nanos <= BASE_NANOS) {
+            return 0;
+        }
+        final int index = 1 + (int) (STEPS_PER_DOUBLING * (Math.log((double) nanos / BASE_NANOS) / Math.log(2)));
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /**
+     * Upper bound of a bucket in nanoseconds.
+     */
+    static long upperBound(final int bucket) {
+        return (long) (BASE_NANOS * Math.pow(2, (double) bucket / STEPS_PER_DOUBLING));
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile in nanoseconds, 0 when empty
+     */
+    long percentile(final double percentile) {
+        final long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
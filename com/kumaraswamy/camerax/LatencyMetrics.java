@@ -0,0 +1,75 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * One {@link LatencyHistogram} per stage of the open and capture paths.
+ */
+final class LatencyMetrics {
+    static final int OPEN = 0;
+    static final int SESSION_CONFIGURE = 1;
+    static final int FIRST_FRAME = 2;
+    static final int SHUTTER_TO_IMAGE = 3;
+    static final int IMAGE_TO_DISK = 4;
+
+    static final String[] STAGE_NAMES = {"Open", "SessionConfigure", "FirstFrame", "ShutterToImage", "ImageToDisk"};
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_NAMES.length];
+
+    private final long[] shutterStarts = new long[8];
+    private int shutterHead;
+    private int shutterCount;
+
+    LatencyMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the time since {@code startNanos}, a start of 0 means the stage was not started
+     * and nothing is recorded.
+     */
+    void recordSince(final int stage, final long startNanos) {
+        if (startNanos != 0) {
+            histograms[stage].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Queues the shutter time of a still, stills arrive in the order they were captured.
+     */
+    synchronized void shutterPressed(final long nanos) {
+        if (shutterCount == shutterStarts.length) {
+            shutterHead = (shutterHead + 1) % shutterStarts.length;
+            shutterCount--;
+        }
+        shutterStarts[(shutterHead + shutterCount) % shutterStarts.length] = nanos;
+        shutterCount++;
+    }
+
+    /**
+     * @return the shutter time of the oldest still that has not arrived yet, 0 if none
+     */
+    synchronized long takeShutter() {
+        if (shutterCount == 0) {
+            return 0;
+        }
+        final long nanos = shutterStarts[shutterHead];
+        shutterHead = (shutterHead + 1) % shutterStarts.length;
+        shutterCount--;
+        return nanos;
+    }
+
+    synchronized void clearShutters() {
+        shutterHead = shutterCount = 0;
+    }
+
+    LatencyHistogram histogram(final int stage) {
+        return histograms[stage];
+    }
+
+    void reset() {
+        for (final LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Maps points on the preview view to sensor active-array coordinates for metering regions.
+ * Matrices are the nine values of an {@code android.graphics.Matrix} in {@code getValues()}
+ * order, so the math has no Android dependencies.
+ */
+final class MeteringMath {
+
+    private MeteringMath() {
+    }
+
+    /**
+     * Inverts an affine matrix.
+     *
+     * @return false if the matrix is not invertible
+     */
+    static boolean invert(final float[] m, final float[] out) {
+        final float det = m[0] * m[4] - m[1] * m[3];
+        if (det == 0) {
+            return false;
+        }
+        final float a = m[4] / det;
+        final float b = -m[1] / det;
+        final float d = -m[3] / det;
+        final float e = m[0] / det;
+        out[0] = a;
+        out[1] = b;
+        out[2] = -(a * m[2] + b * m[5]);
+        out[3] = d;
+        out[4] = e;
+        out[5] = -(d * m[2] + e * m[5]);
+        out[6] = 0;
+        out[7] = 0;
+        out[8] = 1;
+        return true;
+    }
+
+    /**
+     * Maps a view point to the sensor.
+     *
+     * @param transform         matrix set on the texture view, it is inverted to get back to
+     *                          the untransformed preview
+     * @param sensorOrientation clockwise rotation of the sensor from the natural orientation
+     * @param mirrored          the preview is mirrored, as for front cameras
+     * @param crop              current crop region as left, top, right, bottom
+     * @param out               receives the sensor x and y
+     * @return false if the point is outside the preview
+     */
+    static boolean viewToSensor(final float[] transform, final float x, final float y,
+                                final int viewWidth, final int viewHeight, final int sensorOrientation,
+                                final boolean mirrored, final int[] crop, final int[] out) {
+        final float[] inverse = new float[9];
+        if (viewWidth <= 0 || viewHeight <= 0 || !invert(transform, inverse)) {
+            return false;
+        }
+        float u = (inverse[0] * x + inverse[1] * y + inverse[2]) / viewWidth;
+        final float v = (inverse[3] * x + inverse[4] * y + inverse[5]) / viewHeight;
+        if (u < 0 || u > 1 || v < 0 || v > 1) {
+            return false;
+        }
+        if (mirrored) {
+            u = 1 - u;
+        }
+        final float sensorX;
+        final float sensorY;
+        switch ((sensorOrientation % 360 + 360) % 360) {
+            case 90:
+                sensorX = v;
+                sensorY = 1 - u;
+                break;
+            case 180:
+                sensorX = 1 - u;
+                sensorY = 1 - v;
+                break;
+            case 270:
+                sensorX = 1 - v;
+                sensorY = u;
+                break;
+            default:
+                sensorX = u;
+                sensorY = v;
+                break;
+        }
+        out[0] = crop[0] + Math.round(sensorX * (crop[2] - crop[0]));
+        out[1] = crop[1] + Math.round(sensorY * (crop[3] - crop[1]));
+        return true;
+    }
+
+    /**
+     * Maps a sensor point back to the view, the inverse of {@link #viewToSensor}.
+     *
+     * @param out receives the view x and y
+     */
+    static void sensorToView(final float[] transform, final int sensorX, final int sensorY,
+                             final int viewWidth, final int viewHeight, final int sensorOrientation,
+                             final boolean mirrored, final int[] crop, final float[] out) {
+        final float x = crop[2] > crop[0] ? (float) (sensorX - crop[0]) / (crop[2] - crop[0]) : 0;
+        final float y = crop[3] > crop[1] ? (float) (sensorY - crop[1]) / (crop[3] - crop[1]) : 0;
+        float u;
+        final float v;
+        switch ((sensorOrientation % 360 + 360) % 360) {
+            case 90:
+                u = 1 - y;
+                v = x;
+                break;
+            case 180:
+                u = 1 - x;
+                v = 1 - y;
+                break;
+            case 270:
+                u = y;
+                v = 1 - x;
+                break;
+            default:
+                u = x;
+                v = y;
+                break;
+        }
+        if (mirrored) {
+            u = 1 - u;
+        }
+        final float px = u * viewWidth;
+        final float py = v * viewHeight;
+        out[0] = transform[0] * px + transform[1] * py + transform[2];
+        out[1] = transform[3] * px + transform[4] * py + transform[5];
+    }
+
+    /**
+     * The part of the crop region a stream shows. The camera centers the crop region on the
+     * stream and trims it to the stream's aspect ratio, so points of a preview that is not of
+     * the sensor's aspect have to be mapped through this rather than the whole crop region.
+     *
+     * @param crop         crop region as left, top, right, bottom
+     * @param streamWidth  width of the stream in sensor orientation
+     * @param streamHeight height of the stream in sensor orientation
+     * @param out          receives left, top, right, bottom
+     */
+    static void streamCrop(final int[] crop, final int streamWidth, final int streamHeight, final int[] out) {
+        final long width = crop[2] - crop[0];
+        final long height = crop[3] - crop[1];
+        System.arraycopy(crop, 0, out, 0, 4);
+        if (streamWidth <= 0 || streamHeight <= 0) {
+            return;
+        }
+        if (width * streamHeight > height * streamWidth) {
+            final int trim = (int) ((width - height * streamWidth / streamHeight) / 2);
+            out[0] += trim;
+            out[2] -= trim;
+        } else {
+            final int trim = (int) ((height - width * streamHeight / streamWidth) / 2);
+            out[1] += trim;
+            out[3] -= trim;
+        }
+    }
+
+    /**
+     * A square region of the given half size around a point, shifted to stay inside the bounds.
+     *
+     * @param bounds left, top, right, bottom the region has to stay in
+     * @param out    receives left, top, right, bottom
+     */
+    static void region(final int x, final int y, final int halfSize, final int[] bounds, final int[] out) {
+        final int size = Math.min(2 * halfSize, Math.min(bounds[2] - bounds[0], bounds[3] - bounds[1]));
+        final int left = Math.max(bounds[0], Math.min(x - size / 2, bounds[2] - size));
+        final int top = Math.max(bounds[1], Math.min(y - size / 2, bounds[3] - size));
+        out[0] = left;
+        out[1] = top;
+        out[2] = left + size;
+        out[3] = top + size;
+    }
+}
@@ -0,0 +1,70 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Rotation math for pictures and recordings. Device orientation is in degrees clockwise from
+ * the natural orientation as reported by {@code OrientationEventListener}, display rotation in
+ * degrees as reported by {@code Display.getRotation()}.
+ */
+final class OrientationMath {
+    static final int UNKNOWN = -1;
+
+    /**
+     * How far past the halfway point between two orientations the device has to turn before
+     * the snapped orientation changes, so holding it near 45 degrees does not flip back and forth.
+     */
+    private static final int HYSTERESIS = 10;
+
+    private OrientationMath() {
+    }
+
+    /**
+     * Snaps a device orientation to a multiple of 90.
+     *
+     * @param current the last snapped orientation, or {@link #UNKNOWN}
+     * @return the snapped orientation, {@code current} when {@code degrees} is unknown
+     */
+    static int snap(final int degrees, final int current) {
+        if (degrees < 0) {
+            return current;
+        }
+        if (current != UNKNOWN) {
+            int distance = Math.abs(degrees - current);
+            distance = Math.min(distance, 360 - distance);
+            if (distance < 45 + HYSTERESIS) {
+                return current;
+            }
+        }
+        return ((degrees + 45) / 90 * 90) % 360;
+    }
+
+    /**
+     * The device orientation a display rotation implies, for when no sensor reading came yet.
+     */
+    static int deviceFromDisplay(final int displayRotation) {
+        return (360 - displayRotation) % 360;
+    }
+
+    /**
+     * Clockwise rotation that makes a still upright, the value for {@code JPEG_ORIENTATION}.
+     */
+    static int jpegOrientation(final int sensorOrientation, final boolean front, final int deviceOrientation) {
+        final int device = deviceOrientation == UNKNOWN ? 0 : deviceOrientation;
+        return ((front ? sensorOrientation - device : sensorOrientation + device) % 360 + 360) % 360;
+    }
+
+    /**
+     * The EXIF orientation tag for a clockwise rotation.
+     */
+    static int exifOrientation(final int degrees) {
+        switch ((degrees % 360 + 360) % 360) {
+            case 90:
+                return 6;
+            case 180:
+                return 3;
+            case 270:
+                return 8;
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.kumaraswamy.camerax;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Names output files in a directory from a template, spreads long sequences over numbered
+ * sub folders and keeps the directory under a byte budget by deleting the oldest files.
+ * Files are written to a temporary name and renamed once complete, so a reader never sees a
+ * partial file. Plain {@link File} operations only, so it runs against any directory.
+ */
+final class OutputManager {
+    static final String COUNTER = "{counter}";
+    static final String TIME = "{time}";
+    static final String EXTENSION = "{ext}";
+    static final String DEFAULT_TEMPLATE = "IMG_" + TIME + "_" + COUNTER + "." + EXTENSION;
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final Pattern FOLDER_NAME = Pattern.compile("\\d{4,}");
+    private static final Pattern TOKEN = Pattern.compile(Pattern.quote(COUNTER) + "|" + Pattern.quote(TIME)
+            + "|" + Pattern.quote(EXTENSION));
+
+    private final File directory;
+    private final String template;
+    private final int filesPerFolder;
+    private final long budgetBytes;
+    private final Pattern fileName;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US);
+
+    private long counter;
+    private ArrayDeque<File> files;
+    private long totalBytes;
+
+    /**
+     * @param filesPerFolder files per sub folder, 0 to keep everything in the directory
+     * @param budgetBytes    bytes the directory may hold, 0 for no limit
+     */
+    OutputManager(final File directory, final String template, final int filesPerFolder, final long budgetBytes) {
+        this.directory = directory;
+        this.template = template == null || template.isEmpty() ? DEFAULT_TEMPLATE : template;
+        this.filesPerFolder = Math.max(0, filesPerFolder);
+        this.budgetBytes = Math.max(0, budgetBytes);
+        fileName = namePattern(this.template);
+    }
+
+    /**
+     * Matches the names the template produces, so only files this manager could have written
+     * count against the budget.
+     */
+    static Pattern namePattern(final String template) {
+        final StringBuilder regex = new StringBuilder();
+        final Matcher token = TOKEN.matcher(template);
+        int literal = 0;
+        while (token.find()) {
+            regex.append(Pattern.quote(template.substring(literal, token.start())));
+            if (token.group().equals(COUNTER)) {
+                regex.append("\\d{6,}");
+            } else if (token.group().equals(TIME)) {
+                regex.append("\\d{8}_\\d{6}_\\d{3}");
+            } else {
+                regex.append("[A-Za-z0-9]+");
+            }
+            literal = token.end();
+        }
+        regex.append(Pattern.quote(template.substring(literal)));
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Reserves the path of the next file, creating its folder.
+     *
+     * @param extension file extension without the dot, used for {@code {ext}}
+     */
+    synchronized String next(final String extension) throws IOException {
+        while (true) {
+            counter++;
+            final File folder = filesPerFolder == 0 ? directory
+                    : new File(directory, String.format(Locale.US, "%04d", (counter - 1) / filesPerFolder));
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Cannot create " + folder);
+            }
+            final File file = new File(folder, name(counter, extension));
+            if (!file.exists()) {
+                return file.getPath();
+            }
+        }
+    }
+
+    private String name(final long number, final String extension) {
+        return template.replace(COUNTER, String.format(Locale.US, "%06d", number))
+                .replace(TIME, timeFormat.format(new Date()))
+                .replace(EXTENSION, extension);
+    }
+
+    /**
+     * The temporary path a file is written to before {@link #commit}.
+     */
+    static String temporary(final String path) {
+        return path + TEMPORARY_SUFFIX;
+    }
+
+    /**
+     * Renames a completely written temporary file to its final path and deletes the oldest
+     * files while the directory is over budget. The file just written is never deleted, and
+     * neither is anything the template could not have named, such as the user's own files.
+     */
+    synchronized void commit(final String path) throws IOException {
+        final File temporary = new File(temporary(path));
+        final File file = new File(path);
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Cannot rename " + temporary + " to " + file);
+        }
+        if (budgetBytes == 0) {
+            return;
+        }
+        if (files == null) {
+            index();
+        } else {
+            files.addLast(file);
+            totalBytes += file.length();
+        }
+        while (totalBytes > budgetBytes && files.size() > 1) {
+            final File oldest = files.pollFirst();
+            final long length = oldest.length();
+            if (oldest.delete() || !oldest.exists()) {
+                totalBytes -= length;
+                final File folder = oldest.getParentFile();
+                if (folder != null && !folder.equals(directory)) {
+                    folder.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the directory once, oldest first, so files from earlier runs count against the
+     * budget too. Only names matching the template are listed, and only in the directory and
+     * its numbered sub folders. Later files are tracked as they are committed.
+     */
+    private void index() {
+        final List<File> found = new ArrayList<>();
+        collect(directory, found, filesPerFolder == 0 ? 0 : 1);
+        Collections.sort(found, new Comparator<File>() {
+            public int compare(final File a, final File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        files = new ArrayDeque<>(found);
+        totalBytes = 0;
+        for (final File file : found) {
+            totalBytes += file.length();
+        }
+    }
+
+    private void collect(final File folder, final List<File> out, final int depth) {
+        final File[] entries = folder.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (final File entry : entries) {
+            if (entry.isDirectory()) {
+                if (depth > 0 && FOLDER_NAME.matcher(entry.getName()).matches()) {
+                    collect(entry, out, depth - 1);
+                }
+            } else if (fileName.matcher(entry.getName()).matches()) {
+                out.add(entry);
+            }
+        }
+    }
+}
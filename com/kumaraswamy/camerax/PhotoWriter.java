@@ -0,0 +1,91 @@
+package com.kumaraswamy.camerax;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs disk writes off the UI thread and reports each result on the callback executor.
+ */
+final class PhotoWriter {
+
+    interface Job {
+        void write() throws IOException;
+    }
+
+    interface Callback {
+        void onWritten(boolean success);
+    }
+
+    private final Executor executor;
+    private final Executor callbackExecutor;
+
+    PhotoWriter(final Executor executor, final Executor callbackExecutor) {
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * A single writer thread with a bounded queue; submissions beyond {@code queueSize} are
+     * rejected rather than piling up behind a slow card.
+     */
+    static ExecutorService newWriterExecutor(final int queueSize) {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "ProCamera-Writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues a write, the callback is always invoked exactly once.
+     *
+     * @return false if the queue was full and the job was not run
+     */
+    boolean submit(final Job job, final Callback callback) {
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    boolean success = false;
+                    try {
+                        job.write();
+                        success = true;
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                    } finally {
+                        deliver(callback, success);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            deliver(callback, false);
+            return false;
+        }
+    }
+
+    /**
+     * Stops taking jobs, the queued ones are still written.
+     */
+    void shutdown() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private void deliver(final Callback callback, final boolean success) {
+        callbackExecutor.execute(new Runnable() {
+            public void run() {
+                callback.onWritten(success);
+            }
+        });
+    }
+}
@@ -3,27 +3,39 @@ package com.kumaraswamy.camerax;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
+import android.graphics.YuvImage;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.params.Face;
+import android.hardware.camera2.params.MeteringRectangle;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.util.SparseIntArray;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.OrientationEventListener;
 import android.view.Surface;
 import android.view.TextureView;
 import android.view.View;
@@ -43,42 +55,113 @@ import com.google.appinventor.components.runtime.AndroidNonvisibleComponent;
 import com.google.appinventor.components.runtime.AndroidViewComponent;
 import com.google.appinventor.components.runtime.ComponentContainer;
 import com.google.appinventor.components.runtime.EventDispatcher;
+import com.google.appinventor.components.runtime.OnDestroyListener;
+import com.google.appinventor.components.runtime.OnPauseListener;
+import com.google.appinventor.components.runtime.OnResumeListener;
+import com.google.appinventor.components.runtime.util.YailDictionary;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @UsesPermissions(permissionNames = "android.permission.WRITE_EXTERNAL_STORAGE, android.permission.CAMERA")
 @DesignerComponent(version = 1, category = ComponentCategory.EXTENSION,
         description = "Pro custom camera developed by Kumaraswamy B G", nonVisible = true,
         iconName = "https://micode.vercel.app/icon/camera.png")
 @SimpleObject(external = true)
-public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouchListener {
+public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouchListener, OnPauseListener,
+        OnResumeListener, OnDestroyListener {
     private final Activity activity;
 
     private int cameraType = 0;
     private int noiseReductionMode = 0;
     private int cameraStyle = 0;
     private int faceDetectMode = 0;
+    private int captureWidth = 0;
+    private int captureHeight = 0;
 
     private AutoFitTextureView cameraLayout;
     private Size imageDimension;
+    private Size jpegDimension;
+    private int jpegQuality = 90;
+    private int stillFormat = STILL_FORMAT_JPEG;
+    private int activeStillFormat = ImageFormat.JPEG;
+
+    private final CapabilityRegistry capabilityRegistry;
+    private CameraCapabilities capabilities;
 
     private CameraDevice cameraDevice;
     private CaptureRequest.Builder captureRequestBuilder;
-    private CameraCaptureSession cameraCaptureSessions;
+    private CaptureBackend captureBackend;
+    private CaptureBackend.Factory backendFactory = Camera2Backend.FACTORY;
+    private Surface previewSurface;
+    private SurfaceTexture previewTexture;
+    private CameraDevice retiringDevice;
+    private CameraDevice closingDevice;
+    private final DeviceLifecycle deviceLifecycle = new DeviceLifecycle();
+    private boolean paused = false;
+    private volatile long switchStartedAt;
+
+    private final AnalysisStream analysisStream = new AnalysisStream();
+
+    private final VideoRecorder videoRecorder = new VideoRecorder();
+    private Size videoDimension;
+    private String pendingRecording;
+    private int targetFrameRate = 0;
+    private boolean zeroShutterLag = false;
+    private int zslSelection = ZslFrameSelector.CLOSEST;
+    private long zslMemoryBytes = DEFAULT_ZSL_MEMORY_BYTES;
+    private final ZslRing zslRing = new ZslRing(JPEG_POOL_SIZE - 1);
+    private volatile boolean zslActive = false;
+    private int zslReprocessFormat;
+    private Size zslSize;
+    private byte[] zslNv21;
+    private ZslRing.JpegStream zslJpeg;
+    private boolean highSpeed = false;
+    private Range<Integer> highSpeedRange;
+    private int videoWidth = 0;
+    private int videoHeight = 0;
+    private int videoBitRate = 10_000_000;
+    private int videoFrameRate = 30;
+
+    private final CapturePipeline capturePipeline = new CapturePipeline(JPEG_POOL_SIZE - 1);
+    private boolean shotToMemory = false;
+    private final BufferPool bufferPool = new BufferPool(DEFAULT_MEMORY_POOL_BYTES);
+    private final Map<Integer, BufferPool.Buffer> memoryPictures = new HashMap<>();
+    private final AtomicInteger memoryPictureIds = new AtomicInteger();
+    private final StillQueue stillQueue = new StillQueue(JPEG_POOL_SIZE - 1);
+    private final BurstPacer burstPacer = new BurstPacer(JPEG_POOL_SIZE - 1);
+
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+    private final PhotoWriter photoWriter;
 
     private boolean flashMode = false;
-    private boolean enhance = false;
+    private int captureProfile = CaptureProfile.BALANCED;
+    private final Integer[] profileDefaults = new Integer[CaptureProfile.KEY_COUNT];
     private boolean hasZoomSupport = false;
     private boolean visible = true;
     private boolean gestureZoom = false;
+    private boolean syncOutput = true;
+    private boolean preallocateOutput = false;
+    private boolean frameAnalysis = false;
 
     private String cameraID;
     private String imageDestination;
+    private String outputDirectory = "";
+    private String outputTemplate = OutputManager.DEFAULT_TEMPLATE;
+    private int filesPerFolder = 1000;
+    private int diskBudgetMb = 0;
+    private volatile OutputManager outputManager;
 
     private View view;
     private Rect rectSensor;
@@ -87,10 +170,78 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
     private float maxZoom;
     private float currentZoom;
 
-    private float finger_spacing = 0;
+    private final ZoomGesture zoomGesture = new ZoomGesture();
+    private boolean multiTouch = false;
+    private boolean tapToFocus = false;
+
+    private final LatencyMetrics latencyMetrics = new LatencyMetrics();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final BitmapPool bitmapPool = new BitmapPool(PREVIEW_BITMAP_POOL_SIZE);
+    private boolean previewGrabInFlight = false;
+    private long previewGrabs;
+    private long previewGrabsCoalesced;
+    private int previewPictureWidth = 0;
+    private int previewPictureHeight = 0;
+    private int previewPictureFormat = PREVIEW_FORMAT_JPEG;
+    private int previewPictureQuality = 90;
+    private final SettingsBatch settingsBatch = new SettingsBatch();
+    private int metricsInterval = 0;
+    private volatile long openStartedAt;
+    private volatile long sessionStartedAt;
+    private volatile long sessionConfiguredAt;
+    private long shutterPressedAt;
+
+    private final FocusStateMachine focusMachine = new FocusStateMachine();
+    private volatile boolean shotPending = false;
+    private boolean focusLockedByUser = false;
+    /**
+     * Regions set by FocusAt or face metering and the AF mode set by FocusAt or Focus, sent
+     * again when the session is rebuilt. Null while the camera decides.
+     */
+    private MeteringRectangle[] meteringRegions;
+    private Integer afModeOverride;
+    private float manualFocusDistance;
+    private Integer afModeBeforeFocusAt;
+    private Integer afOverrideBeforeFocusAt;
+    private boolean convergeBeforeCapture = true;
+    private final Matrix previewTransform = new Matrix();
+    private OrientationEventListener orientationListener;
+    private volatile int deviceOrientation = OrientationMath.UNKNOWN;
+    private volatile int stillOrientation;
+    private boolean exifOrientationOnly = false;
+    private final float[] transformValues = new float[9];
+    private final FaceTracker faceTracker = new FaceTracker(FACE_EVENT_INTERVAL_MS, FACE_TOLERANCE);
+    private final int[] faceRects = new int[FaceTracker.MAX_FACES * 4];
+    private final int[] faceScores = new int[FaceTracker.MAX_FACES];
+    private final float[] facePoint = new float[2];
+    private boolean facePriorityMetering = false;
+    private boolean faceRegionsSet = false;
+    private long faceRegionsAt;
 
     private FrameLayout cameraView;
 
+    private static final int JPEG_POOL_SIZE = 4;
+    private static final int WRITE_QUEUE_SIZE = 8;
+    private static final long MAX_PREVIEW_PIXELS = 1920 * 1080;
+    private static final long MAX_ANALYSIS_PIXELS = 640 * 480;
+    private static final long MAX_VIDEO_PIXELS = 1920 * 1080;
+    private static final long FOCUS_TIMEOUT_MS = 3000;
+    private static final long SHOT_CONVERGENCE_TIMEOUT_MS = 1000;
+    private static final int FOCUS_REGION_FRACTION = 10;
+    private static final long FACE_EVENT_INTERVAL_MS = 100;
+    private static final int FACE_TOLERANCE = 32;
+    private static final long FACE_REGION_INTERVAL_MS = 500;
+    private static final int PREVIEW_BITMAP_POOL_SIZE = 2;
+    private static final int DEFAULT_MEMORY_POOL_BYTES = 32 * 1024 * 1024;
+    private static final int DEFAULT_ZSL_MEMORY_BYTES = 96 * 1024 * 1024;
+    private static final int MAX_ZSL_FRAMES = 8;
+    private static final int ZSL_SHARPEST_WINDOW = 3;
+    private static final int PREVIEW_FORMAT_JPEG = 0;
+    private static final int PREVIEW_FORMAT_PNG = 1;
+    private static final int PREVIEW_FORMAT_WEBP = 2;
+    private static final int STILL_FORMAT_JPEG = 0;
+    private static final int STILL_FORMAT_HEIC = 1;
+
     private static final SparseIntArray ORIENTATIONS;
 
     static {
@@ -105,19 +256,44 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
         super(container.$form());
 
         activity = container.$context();
+        capabilityRegistry = new CapabilityRegistry((CameraManager) activity.getSystemService(Context.CAMERA_SERVICE));
+        photoWriter = new PhotoWriter(PhotoWriter.newWriterExecutor(WRITE_QUEUE_SIZE), new Executor() {
+            public void execute(final Runnable runnable) {
+                activity.runOnUiThread(runnable);
+            }
+        });
+        form.registerForOnPause(this);
+        form.registerForOnResume(this);
+        form.registerForOnDestroy(this);
+    }
+
+    /**
+     * Replaces how the backend of an opened camera is made, takes effect on the next open.
+     */
+    void setBackendFactory(final CaptureBackend.Factory factory) {
+        backendFactory = factory;
     }
 
     private final TextureView.SurfaceTextureListener surfaceTextureListener = new TextureView.SurfaceTextureListener() {
-        public void onSurfaceTextureAvailable(final SurfaceTexture surfaceTexture, final int height, final int width) {
-            configureTransform(height, width);
-            openCamera();
+        public void onSurfaceTextureAvailable(final SurfaceTexture surfaceTexture, final int width, final int height) {
+            if (!paused && deviceLifecycle.requestOpen()) {
+                openCamera(width, height);
+            }
+            configureTransform(width, height);
         }
 
-        public void onSurfaceTextureSizeChanged(final SurfaceTexture surfaceTexture, final int i, final int i1) {
+        public void onSurfaceTextureSizeChanged(final SurfaceTexture surfaceTexture, final int width, final int height) {
+            configureTransform(width, height);
         }
 
         public boolean onSurfaceTextureDestroyed(final SurfaceTexture surfaceTexture) {
-            return false;
+            releaseCamera();
+            if (previewSurface != null) {
+                previewSurface.release();
+                previewSurface = null;
+                previewTexture = null;
+            }
+            return true;
         }
 
         public void onSurfaceTextureUpdated(final SurfaceTexture surfaceTexture) {
@@ -126,17 +302,49 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
 
     private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
         public void onOpened(final CameraDevice camera) {
-            cameraDevice = camera;
-            createCameraPreview();
+            latencyMetrics.recordSince(LatencyMetrics.OPEN, openStartedAt);
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    if (!deviceLifecycle.onOpened()) {
+                        closeTracked(camera);
+                        return;
+                    }
+                    closeRetiringDevice();
+                    cameraDevice = camera;
+                    captureBackend = backendFactory.create(camera, cameraHandler);
+                    createCameraPreview();
+                }
+            });
         }
 
         public void onDisconnected(final CameraDevice camera) {
-            cameraDevice.close();
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    deviceLost(camera);
+                }
+            });
         }
 
         public void onError(final CameraDevice camera, final int error) {
-            cameraDevice.close();
-            cameraDevice = null;
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    deviceLost(camera);
+                }
+            });
+        }
+
+        public void onClosed(final CameraDevice camera) {
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    if (camera != closingDevice) {
+                        return;
+                    }
+                    closingDevice = null;
+                    if (deviceLifecycle.onClosed()) {
+                        reopenCamera();
+                    }
+                }
+            });
         }
     };
 
@@ -148,12 +356,125 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
     final CameraCaptureSession.CaptureCallback captureListener =  new CameraCaptureSession.CaptureCallback() {
         public void onCaptureCompleted(final CameraCaptureSession session, final CaptureRequest request, final TotalCaptureResult result) {
             super.onCaptureCompleted(session, request, result);
-            createCameraPreview();
-            final int res = result.get(CaptureResult.CONTROL_AF_STATE);
-            if (res == CaptureRequest.CONTROL_AF_STATE_FOCUSED_LOCKED) {
-                FocusLocked();
-            } else if (res == CaptureRequest.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
-                FocusUnlocked();
+            final Integer res = result.get(CaptureResult.CONTROL_AF_STATE);
+            if (res == null) {
+                return;
+            }
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    if (res == CaptureRequest.CONTROL_AF_STATE_FOCUSED_LOCKED) {
+                        FocusLocked();
+                    } else if (res == CaptureRequest.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
+                        FocusUnlocked();
+                    }
+                }
+            });
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback previewResultListener = new CameraCaptureSession.CaptureCallback() {
+        public void onCaptureCompleted(final CameraCaptureSession session, final CaptureRequest request, final TotalCaptureResult result) {
+            if (sessionConfiguredAt != 0) {
+                latencyMetrics.recordSince(LatencyMetrics.FIRST_FRAME, sessionConfiguredAt);
+                sessionConfiguredAt = 0;
+                if (switchStartedAt != 0) {
+                    final long switchMillis = (System.nanoTime() - switchStartedAt) / 1_000_000L;
+                    switchStartedAt = 0;
+                    activity.runOnUiThread(new Runnable() {
+                        public void run() {
+                            CameraSwitched(cameraType, switchMillis);
+                        }
+                    });
+                }
+            }
+            if (videoRecorder.isRecording()) {
+                videoRecorder.onFrame();
+            }
+            if (zslActive) {
+                zslRing.addResult(result);
+            }
+            handleFocusResult(result);
+            trackFaces(result);
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback focusTriggerListener = new CameraCaptureSession.CaptureCallback() {
+        public void onCaptureCompleted(final CameraCaptureSession session, final CaptureRequest request, final TotalCaptureResult result) {
+            focusMachine.arm();
+        }
+
+        public void onCaptureFailed(final CameraCaptureSession session, final CaptureRequest request, final CaptureFailure failure) {
+            focusMachine.arm();
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback burstListener = new CameraCaptureSession.CaptureCallback() {
+        public void onCaptureFailed(final CameraCaptureSession session, final CaptureRequest request, final CaptureFailure failure) {
+            // a captured image still arrives, or is reported through onCaptureBufferLost
+            if (!failure.wasImageCaptured()) {
+                burstFrameLost();
+            }
+        }
+
+        public void onCaptureBufferLost(final CameraCaptureSession session, final CaptureRequest request,
+                                        final Surface target, final long frameNumber) {
+            if (target == captureBackend.getJpegSurface()) {
+                burstFrameLost();
+            }
+        }
+    };
+
+    /**
+     * Counts a frame the camera will not deliver toward the sequence, so a finite sequence
+     * still completes.
+     */
+    private void burstFrameLost() {
+        burstFrameDone();
+        if (capturePipeline.fail()) {
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    stopPacedCaptures();
+                    BurstCompleted(capturePipeline.saved(), capturePipeline.dropped());
+                }
+            });
+        }
+    }
+
+    /**
+     * A frame of the sequence is written, dropped or lost, which frees room for a paced capture.
+     */
+    private void burstFrameDone() {
+        if (burstPacer.done()) {
+            mainHandler.post(pacedCapture);
+        }
+    }
+
+    private final ImageReader.OnImageAvailableListener readerListener = new ImageReader.OnImageAvailableListener() {
+        public void onImageAvailable(final ImageReader reader) {
+            final Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+            if (capturePipeline.isActive()) {
+                writeBurstFrame(image);
+                return;
+            }
+            final Boolean toMemory = stillQueue.arrived();
+            if (toMemory == null) {
+                image.close();
+            } else {
+                latencyMetrics.recordSince(LatencyMetrics.SHUTTER_TO_IMAGE, latencyMetrics.takeShutter());
+                if (toMemory) {
+                    keepInMemory(image);
+                } else {
+                    writeStill(image);
+                }
             }
         }
     };
@@ -171,7 +492,11 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
 
     @SimpleFunction(description = "Initialize camera in an arrangement")
     public void Initialize(final AndroidViewComponent component, final int cameraType) {
+        if (this.cameraType != cameraType) {
+            capabilities = null;
+        }
         this.cameraType = cameraType;
+        startCameraThread();
         cameraView = (FrameLayout) (view = component.getView());
         removeView(cameraView);
         cameraView.addView(cameraLayout = new AutoFitTextureView(activity));
@@ -184,6 +509,7 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
 
         cameraLayout.setLayoutParams(params);
         cameraLayout.setOnTouchListener(this);
+        enableOrientationListener();
         Visible(visible);
     }
 
@@ -219,6 +545,69 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
         EventDispatcher.dispatchEvent(this, "SavedPhoto");
     }
 
+    @SimpleEvent(description = "Event fired when a frame of a burst or continuous capture is saved")
+    public void BurstFrameSaved(int frame, String path) {
+        EventDispatcher.dispatchEvent(this, "BurstFrameSaved", frame, path);
+    }
+
+    @SimpleEvent(description = "Event fired when a burst or continuous capture has finished")
+    public void BurstCompleted(int savedFrames, int droppedFrames) {
+        EventDispatcher.dispatchEvent(this, "BurstCompleted", savedFrames, droppedFrames);
+    }
+
+    @SimpleEvent(description = "Event fired before a picture is taken with the time focus and exposure took " +
+            "to settle, -1 when one of them did not settle in time")
+    public void CaptureConverged(long focusMilliseconds, long exposureMilliseconds, boolean timedOut) {
+        EventDispatcher.dispatchEvent(this, "CaptureConverged", focusMilliseconds, exposureMilliseconds, timedOut);
+    }
+
+    @SimpleEvent(description = "Event fired every MetricsInterval milliseconds with the latest Metrics")
+    public void MetricsReported(YailDictionary metrics) {
+        EventDispatcher.dispatchEvent(this, "MetricsReported", metrics);
+    }
+
+    @SimpleEvent(description = "Event fired when the first frame of the new camera is shown after SwitchCamera")
+    public void CameraSwitched(int cameraType, long milliseconds) {
+        EventDispatcher.dispatchEvent(this, "CameraSwitched", cameraType, milliseconds);
+    }
+
+    @SimpleEvent(description = "Event fired when a recording has started")
+    public void RecordingStarted(String path) {
+        EventDispatcher.dispatchEvent(this, "RecordingStarted", path);
+    }
+
+    @SimpleEvent(description = "Event fired when a recording could not be started")
+    public void RecordingFailed(String message) {
+        EventDispatcher.dispatchEvent(this, "RecordingFailed", message);
+    }
+
+    @SimpleEvent(description = "Event fired when a recording has stopped, with its duration in milliseconds, " +
+            "the frames sent to the encoder and the file size in bytes")
+    public void RecordingStats(String path, long milliseconds, long frames, long bytes, boolean success) {
+        EventDispatcher.dispatchEvent(this, "RecordingStats", path, milliseconds, frames, bytes, success);
+    }
+
+    @SimpleEvent(description = "Event fired when a picture taken with TakePictureToMemory is ready, with the " +
+            "handle to use it by and its size in bytes")
+    public void PictureInMemory(int handle, int bytes) {
+        EventDispatcher.dispatchEvent(this, "PictureInMemory", handle, bytes);
+    }
+
+    @SimpleEvent(description = "Event fired when a picture did not fit into the memory pool")
+    public void MemoryPictureDropped() {
+        EventDispatcher.dispatchEvent(this, "MemoryPictureDropped");
+    }
+
+    @SimpleEvent(description = "Event fired when a picture held in memory was saved")
+    public void MemoryPictureSaved(int handle, String path, boolean success) {
+        EventDispatcher.dispatchEvent(this, "MemoryPictureSaved", handle, path, success);
+    }
+
+    @SimpleEvent(description = "Event fired with the path of a saved picture, after SavedPhoto")
+    public void PictureSaved(String path) {
+        EventDispatcher.dispatchEvent(this, "PictureSaved", path);
+    }
+
     @SimpleEvent(description = "Event fired when refreshed camera")
     public void RefreshedCamera() {
         EventDispatcher.dispatchEvent(this, "RefreshedCamera");
@@ -231,7 +620,7 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
 
     @SimpleEvent(description = "Event fired when zoom is being done on the camera layout")
     public void ZoomByPinch(boolean zoomTypeIncrease) {
-        EventDispatcher.dispatchEvent(this, "ZoomByGesture", zoomTypeIncrease);
+        EventDispatcher.dispatchEvent(this, "ZoomByPinch", zoomTypeIncrease);
     }
 
     @SimpleEvent(description = "Event fired when focus locked")
@@ -244,6 +633,12 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
         EventDispatcher.dispatchEvent(this, "FocusUnlocked");
     }
 
+    @SimpleEvent(description = "Event fired when the detected faces change, at most every 100 ms. Each face " +
+            "is a dictionary with Left, Top, Right and Bottom in view pixels and a Score from 1 to 100")
+    public void FacesDetected(int count, List<YailDictionary> faces) {
+        EventDispatcher.dispatchEvent(this, "FacesDetected", count, faces);
+    }
+
     @SimpleEvent(description = "Event fired when camera layout is touched")
     public void Touched() {
         EventDispatcher.dispatchEvent(this, "Touched");
@@ -259,6 +654,40 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
         return 1;
     }
 
+    @SimpleProperty(description = "The rear lens with the widest view, or the main rear lens if there is none")
+    public int CameraTypeUltraWide() {
+        return CameraResolver.TYPE_ULTRA_WIDE;
+    }
+
+    @SimpleProperty(description = "The rear lens with the longest focal length, or the main rear lens if there is none")
+    public int CameraTypeTele() {
+        return CameraResolver.TYPE_TELE;
+    }
+
+    @SimpleFunction(description = "The cameras on the device, each with its id, facing, focal length, hardware " +
+            "level, whether it is a logical multi-camera and the camera type that opens it, -1 if none does")
+    public List<YailDictionary> AvailableLenses() {
+        final List<YailDictionary> result = new ArrayList<>();
+        try {
+            final List<CameraResolver.Lens> lenses = capabilityRegistry.lenses();
+            for (final CameraResolver.Lens lens : lenses) {
+                final YailDictionary entry = new YailDictionary();
+                entry.put("Id", lens.id);
+                entry.put("Facing", lens.facing == CameraResolver.FACING_FRONT ? "Front"
+                        : lens.facing == CameraResolver.FACING_BACK ? "Rear" : "External");
+                entry.put("FocalLength", lens.focalLength);
+                entry.put("HardwareLevel", lens.hardwareLevel);
+                entry.put("LogicalMultiCamera", lens.logicalMultiCamera);
+                entry.put("CameraType", CameraResolver.typeOf(lenses, lens));
+                result.add(entry);
+            }
+        }
+        catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
     @SimpleProperty
     public int CurrentCameraType() {
         return cameraType;
@@ -268,6 +697,7 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
     @SimpleProperty
     public void Flash(final boolean condition) {
         flashMode = condition;
+        applySetting(CaptureRequest.FLASH_MODE, flashMode ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF);
     }
 
     @SimpleProperty
@@ -276,14 +706,167 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
     }
 
     @DesignerProperty(editorType = "boolean", defaultValue = "False")
-    @SimpleProperty
+    @SimpleProperty(description = "Use the Quality profile, turning it off goes back to Balanced")
     public void Enhance(final boolean condition) {
-        enhance = condition;
+        if (condition) {
+            CaptureProfile(CaptureProfile.QUALITY);
+        } else if (captureProfile == CaptureProfile.QUALITY) {
+            CaptureProfile(CaptureProfile.BALANCED);
+        }
     }
 
     @SimpleProperty
     public boolean Enhance() {
-        return enhance;
+        return captureProfile == CaptureProfile.QUALITY;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "1")
+    @SimpleProperty(description = "Processing profile. Speed keeps the camera defaults on the preview and fast " +
+            "processing on pictures, Balanced uses fast processing on the preview and high quality on pictures, " +
+            "Quality also turns on optical stabilization for the preview")
+    public void CaptureProfile(final int profile) {
+        captureProfile = Math.max(CaptureProfile.SPEED, Math.min(profile, CaptureProfile.QUALITY));
+        if (captureRequestBuilder != null) {
+            applyProfile(captureRequestBuilder, false, true);
+        }
+    }
+
+    @SimpleProperty
+    public int CaptureProfile() {
+        return captureProfile;
+    }
+
+    @SimpleProperty
+    public int ProfileSpeed() {
+        return CaptureProfile.SPEED;
+    }
+
+    @SimpleProperty
+    public int ProfileBalanced() {
+        return CaptureProfile.BALANCED;
+    }
+
+    @SimpleProperty
+    public int ProfileQuality() {
+        return CaptureProfile.QUALITY;
+    }
+
+    /**
+     * Sets the processing modes of the profile on a request.
+     *
+     * @param live the request is the running preview, changes go through {@link #applySetting}
+     *             so only the keys that changed are sent
+     */
+    private void applyProfile(final CaptureRequest.Builder builder, final boolean still, final boolean live) {
+        if (capabilities == null) {
+            return;
+        }
+        final int[] modes = new int[CaptureProfile.KEY_COUNT];
+        CaptureProfile.select(captureProfile, still, capabilities.processingModes(), modes);
+        for (int key = 0; key < CaptureProfile.KEY_COUNT; key++) {
+            if (live) {
+                // a key the profile leaves alone goes back to what the preview template had
+                applySetting(profileKey(key), modes[key] == CaptureProfile.UNSET ? profileDefaults[key] : (Integer) modes[key]);
+            } else if (modes[key] != CaptureProfile.UNSET) {
+                builder.set(profileKey(key), modes[key]);
+            }
+        }
+    }
+
+    /**
+     * Remembers the template values of the profile keys of a fresh preview request.
+     */
+    private void saveProfileDefaults(final CaptureRequest.Builder builder) {
+        for (int key = 0; key < CaptureProfile.KEY_COUNT; key++) {
+            profileDefaults[key] = builder.get(profileKey(key));
+        }
+    }
+
+    private static CaptureRequest.Key<Integer> profileKey(final int key) {
+        switch (key) {
+            case CaptureProfile.EDGE:
+                return CaptureRequest.EDGE_MODE;
+            case CaptureProfile.SHADING:
+                return CaptureRequest.SHADING_MODE;
+            case CaptureProfile.TONEMAP:
+                return CaptureRequest.TONEMAP_MODE;
+            case CaptureProfile.ABERRATION:
+                return CaptureRequest.COLOR_CORRECTION_ABERRATION_MODE;
+            case CaptureProfile.COLOR_CORRECTION:
+                return CaptureRequest.COLOR_CORRECTION_MODE;
+            case CaptureProfile.HOT_PIXEL:
+                return CaptureRequest.HOT_PIXEL_MODE;
+            default:
+                return CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE;
+        }
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "True")
+    @SimpleProperty(description = "Flush each photo to storage before it is reported as saved")
+    public void SyncOutput(final boolean condition) {
+        syncOutput = condition;
+    }
+
+    @SimpleProperty
+    public boolean SyncOutput() {
+        return syncOutput;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "Reserve the full file size before writing a photo")
+    public void PreallocateOutput(final boolean condition) {
+        preallocateOutput = condition;
+    }
+
+    @SimpleProperty
+    public boolean PreallocateOutput() {
+        return preallocateOutput;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Preferred picture width, 0 for the largest size. Applies when the camera is opened")
+    public void CaptureWidth(final int width) {
+        captureWidth = width;
+    }
+
+    @SimpleProperty
+    public int CaptureWidth() {
+        return captureWidth;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Preferred picture height, 0 for the largest size. Applies when the camera is opened")
+    public void CaptureHeight(final int height) {
+        captureHeight = height;
+    }
+
+    @SimpleProperty
+    public int CaptureHeight() {
+        return captureHeight;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "Stream small YUV preview frames to the frame analyzers added by other " +
+            "extensions. Applies when the camera is opened")
+    public void FrameAnalysis(final boolean condition) {
+        frameAnalysis = condition;
+    }
+
+    @SimpleProperty
+    public boolean FrameAnalysis() {
+        return frameAnalysis;
+    }
+
+    /**
+     * Registers an analyzer for the preview frames, used by other extensions when
+     * {@link #FrameAnalysis(boolean)} is enabled.
+     */
+    public void addFrameAnalyzer(final FrameAnalyzer analyzer) {
+        analysisStream.addAnalyzer(analyzer);
+    }
+
+    public void removeFrameAnalyzer(final FrameAnalyzer analyzer) {
+        analysisStream.removeAnalyzer(analyzer);
     }
 
     @DesignerProperty(editorType = "textArea")
@@ -297,6 +880,62 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
         return (imageDestination == null) ? "" : imageDestination;
     }
 
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_STRING, defaultValue = "")
+    @SimpleProperty(description = "Directory every picture gets its own file in, named by OutputTemplate. " +
+            "When empty, pictures go to Output")
+    public void OutputDirectory(final String directory) {
+        outputDirectory = directory == null ? "" : directory;
+        updateOutputManager();
+    }
+
+    @SimpleProperty
+    public String OutputDirectory() {
+        return outputDirectory;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_STRING, defaultValue = OutputManager.DEFAULT_TEMPLATE)
+    @SimpleProperty(description = "File name template for OutputDirectory, {counter} is replaced by a running " +
+            "number, {time} by the time of the picture and {ext} by the file extension")
+    public void OutputTemplate(final String template) {
+        outputTemplate = template;
+        updateOutputManager();
+    }
+
+    @SimpleProperty
+    public String OutputTemplate() {
+        return outputTemplate;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "1000")
+    @SimpleProperty(description = "Files per numbered sub folder of OutputDirectory, 0 to keep all files in it")
+    public void FilesPerFolder(final int files) {
+        filesPerFolder = files;
+        updateOutputManager();
+    }
+
+    @SimpleProperty
+    public int FilesPerFolder() {
+        return filesPerFolder;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Megabytes OutputDirectory may hold, the oldest files are deleted beyond it. " +
+            "0 for no limit")
+    public void DiskBudgetMB(final int megabytes) {
+        diskBudgetMb = megabytes;
+        updateOutputManager();
+    }
+
+    @SimpleProperty
+    public int DiskBudgetMB() {
+        return diskBudgetMb;
+    }
+
+    private void updateOutputManager() {
+        outputManager = outputDirectory.isEmpty() ? null : new OutputManager(new File(outputDirectory),
+                outputTemplate, filesPerFolder, diskBudgetMb * 1024L * 1024L);
+    }
+
     @SimpleProperty
     public int DefaultFilter() {
         return CaptureRequest.CONTROL_EFFECT_MODE_OFF;
@@ -350,6 +989,7 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
     @SimpleProperty(description = "Set noise reduction mode")
     public void NoiseReductionMode(final int mode) {
         noiseReductionMode = mode;
+        applySetting(CaptureRequest.NOISE_REDUCTION_MODE, mode);
     }
 
     @SimpleProperty
@@ -385,117 +1025,932 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
     @SimpleProperty(description = "Set the camera style type")
     public void CameraFilter(final int filter) {
         cameraStyle = filter;
+        applySetting(CaptureRequest.CONTROL_EFFECT_MODE, filter);
+    }
+
+    @SimpleFunction(description = "Latency percentiles in milliseconds for opening the camera, configuring the " +
+            "session, the first preview frame, shutter to image and image to disk, plus preview picture and memory pool counts")
+    public YailDictionary Metrics() {
+        final YailDictionary metrics = new YailDictionary();
+        for (int stage = 0; stage < LatencyMetrics.STAGE_NAMES.length; stage++) {
+            final LatencyHistogram histogram = latencyMetrics.histogram(stage);
+            final YailDictionary stageMetrics = new YailDictionary();
+            stageMetrics.put("Count", histogram.count());
+            stageMetrics.put("P50", histogram.percentile(50) / 1e6);
+            stageMetrics.put("P95", histogram.percentile(95) / 1e6);
+            stageMetrics.put("P99", histogram.percentile(99) / 1e6);
+            metrics.put(LatencyMetrics.STAGE_NAMES[stage], stageMetrics);
+        }
+        final YailDictionary previewGrab = new YailDictionary();
+        previewGrab.put("Grabs", previewGrabs);
+        previewGrab.put("Coalesced", previewGrabsCoalesced);
+        previewGrab.put("BitmapReuses", bitmapPool.reuses());
+        previewGrab.put("BitmapAllocations", bitmapPool.allocations());
+        metrics.put("PreviewGrab", previewGrab);
+        final YailDictionary memoryPool = new YailDictionary();
+        memoryPool.put("Hits", bufferPool.hits());
+        memoryPool.put("Misses", bufferPool.misses());
+        memoryPool.put("Rejected", bufferPool.rejected());
+        memoryPool.put("InUseBytes", bufferPool.inUseBytes());
+        memoryPool.put("PeakBytes", bufferPool.peakBytes());
+        memoryPool.put("AllocatedBytes", bufferPool.allocatedBytes());
+        metrics.put("MemoryPool", memoryPool);
+        return metrics;
+    }
+
+    @SimpleFunction(description = "Clear the collected metrics")
+    public void ResetMetrics() {
+        latencyMetrics.reset();
+        previewGrabs = previewGrabsCoalesced = 0;
+        bitmapPool.resetCounts();
+        bufferPool.resetCounts();
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Fire MetricsReported every this many milliseconds, 0 to turn it off")
+    public void MetricsInterval(final int interval) {
+        metricsInterval = interval;
+        mainHandler.removeCallbacks(metricsReporter);
+        if (interval > 0) {
+            mainHandler.postDelayed(metricsReporter, interval);
+        }
+    }
+
+    @SimpleProperty
+    public int MetricsInterval() {
+        return metricsInterval;
     }
 
+    private final Runnable metricsReporter = new Runnable() {
+        public void run() {
+            MetricsReported(Metrics());
+            if (metricsInterval > 0) {
+                mainHandler.postDelayed(this, metricsInterval);
+            }
+        }
+    };
+
     @SimpleFunction(description = "Take a picture")
     public void TakePicture() {
-        takePicture();
+        takePicture(false);
     }
 
-    @SimpleProperty
-    public void FaceFocusMode(int mode) {
-        faceDetectMode = mode;
+    @SimpleFunction(description = "Take a picture and keep it in memory instead of saving it. PictureInMemory " +
+            "fires with a handle, which has to be released with ReleasePicture once it is no longer needed")
+    public void TakePictureToMemory() {
+        takePicture(true);
     }
 
-    @SimpleProperty
-    public int FaceFocusMode() {
-        return faceDetectMode;
+    @SimpleFunction(description = "Save a picture held in memory to a path, MemoryPictureSaved fires when done. " +
+            "The picture stays in memory until it is released")
+    public void SavePictureFromMemory(final int handle, final String path) {
+        final BufferPool.Buffer buffer = memoryPictures.get(handle);
+        if (buffer == null || !buffer.retain()) {
+            MemoryPictureSaved(handle, path, false);
+            return;
+        }
+        final boolean syncWrite = syncOutput;
+        final boolean preallocate = preallocateOutput;
+        photoWriter.submit(new PhotoWriter.Job() {
+            public void write() throws IOException {
+                try {
+                    ChannelWriter.write(buffer.view(), path, preallocate, syncWrite);
+                } finally {
+                    buffer.release();
+                }
+            }
+        }, new PhotoWriter.Callback() {
+            public void onWritten(final boolean success) {
+                MemoryPictureSaved(handle, path, success);
+            }
+        });
     }
 
-    @SimpleProperty
-    public int FaceFocusModeDefault() {
-        return CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
+    @SimpleFunction(description = "The bytes of a picture held in memory as Base64, for uploading it")
+    public String PictureAsBase64(final int handle) {
+        final ByteBuffer view = getPictureBuffer(handle);
+        if (view == null) {
+            return "";
+        }
+        final byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return Base64.encodeToString(bytes, Base64.NO_WRAP);
     }
 
-    @SimpleProperty
-    public int FaceFocusModeSimple() {
-        return CaptureRequest.STATISTICS_FACE_DETECT_MODE_SIMPLE;
+    @SimpleFunction(description = "Release a picture held in memory, its buffer goes back to the pool")
+    public void ReleasePicture(final int handle) {
+        final BufferPool.Buffer buffer = memoryPictures.remove(handle);
+        if (buffer != null) {
+            buffer.release();
+        }
     }
 
-    @SimpleProperty
-    public int FaceFocusModeHigh() {
-        return CaptureRequest.STATISTICS_FACE_DETECT_MODE_FULL;
+    /**
+     * For other extensions: a read-only view of a picture held in memory, valid until the
+     * picture is released, or null if there is no such picture.
+     */
+    public ByteBuffer getPictureBuffer(final int handle) {
+        final BufferPool.Buffer buffer = memoryPictures.get(handle);
+        return buffer == null ? null : buffer.view();
     }
 
-    @SimpleFunction(description = "Take preview photo")
-    public void TakePreviewPicture() {
-        if(cameraLayout == null) return;
-        try (FileOutputStream stream = new FileOutputStream(imageDestination)) {
-            cameraLayout.getBitmap().compress(Bitmap.CompressFormat.JPEG, 100, stream);
-            SavedPhoto();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "33554432")
+    @SimpleProperty(description = "Bytes that pictures held in memory may use in total, a picture that does not " +
+            "fit fires MemoryPictureDropped")
+    public void MemoryPoolBytes(final int bytes) {
+        bufferPool.setMaxBytes(bytes);
     }
 
-    @SimpleFunction(description = "Set zoom, make sure the values are in limit")
-    public void Zoom(final float zoomRatio) {
-        if (hasZoomSupport && captureRequestBuilder != null && cameraCaptureSessions != null) {
-            setZoom(captureRequestBuilder, zoomRatio, false);
-        }
+    @SimpleProperty
+    public int MemoryPoolBytes() {
+        return (int) bufferPool.maxBytes();
     }
 
-    public void setZoom(@NonNull final CaptureRequest.Builder builder, final float zoom, final boolean isCapture) {
-        final float newZoom = Math.max(zoom, Math.min(1.0f, maxZoom));
-        final int centerX = rectSensor.width() / 2;
-        final int centerY = rectSensor.height() / 2;
-        final int deltaX = (int)(0.5f * rectSensor.width() / newZoom);
-        final int deltaY = (int)(0.5f * rectSensor.height() / newZoom);
-        rectCrop.set(centerX - deltaX, centerY - deltaY, centerX + deltaX, centerY + deltaY);
-        builder.set(CaptureRequest.SCALER_CROP_REGION, rectCrop);
-        try {
-            if (!isCapture) {
-                cameraCaptureSessions.setRepeatingRequest(builder.build(), null, null);
-                ZoomChanged();
-            }
-        }
-        catch (CameraAccessException e) {
-            e.printStackTrace();
-        }
-        currentZoom = zoom;
+    @DesignerProperty(defaultValue = "False", editorType = "boolean")
+    @SimpleProperty(description = "Keep the last few full resolution frames, so a picture is made from the " +
+            "moment of the tap instead of the frame after it. Uses reprocessing where the camera supports it. " +
+            "Takes effect the next time the camera opens")
+    public void ZeroShutterLag(final boolean enabled) {
+        zeroShutterLag = enabled;
     }
 
-    @SimpleFunction(description = "Locks the camera focus")
-    public void LockFocus() {
-        if(captureRequestBuilder == null) return;
-        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, 1);
-        try {
-            cameraCaptureSessions.capture(captureRequestBuilder.build(), captureListener, null);
-        }
-        catch (CameraAccessException e) {
-            e.printStackTrace();
-        }
+    @SimpleProperty
+    public boolean ZeroShutterLag() {
+        return zeroShutterLag;
     }
 
-    @SimpleFunction(description = "Check if the camera is active")
-    public boolean CameraActive() {
-        return cameraLayout == null ? false : cameraLayout.isAvailable() ? true : false;
+    @SimpleProperty(description = "Whether the open camera keeps frames for zero shutter lag pictures")
+    public boolean ZeroShutterLagActive() {
+        return zslActive;
     }
 
-    @SimpleFunction(description = "Unlocks the camera focus")
-    public void UnlockFocus() {
-        if(captureRequestBuilder == null) return;
-        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, 2);
-        try {
-            cameraCaptureSessions.capture(captureRequestBuilder.build(), captureListener, null);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
-        }
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "100663296")
+    @SimpleProperty(description = "Bytes the zero shutter lag frames may use, which decides how many frames " +
+            "are kept. Takes effect the next time the camera opens")
+    public void ZslMemoryBytes(final int bytes) {
+        zslMemoryBytes = bytes;
     }
 
     @SimpleProperty
-    public float MaxZoom() {
-        zoomSettings();
-        return maxZoom;
+    public int ZslMemoryBytes() {
+        return (int) zslMemoryBytes;
     }
 
-    @DesignerProperty(defaultValue = "True", editorType = "boolean")
-    @SimpleProperty(description = "Set whether camera view should be visible")
-    public void Visible(final boolean visible) {
-        if (cameraView != null) {
-            cameraView.setVisibility(visible ? 0 : 4);
-        }
-        this.visible = visible;
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Which kept frame a zero shutter lag picture is made from, the one closest " +
+            "to the tap or the sharpest of the last three")
+    public void ZslSelection(final int selection) {
+        zslSelection = selection;
+        zslRing.setMeasureSharpness(selection == ZslFrameSelector.SHARPEST);
+    }
+
+    @SimpleProperty
+    public int ZslSelection() {
+        return zslSelection;
+    }
+
+    @SimpleProperty
+    public int ZslSelectionClosest() {
+        return ZslFrameSelector.CLOSEST;
+    }
+
+    @SimpleProperty
+    public int ZslSelectionSharpest() {
+        return ZslFrameSelector.SHARPEST;
+    }
+
+    /**
+     * Copies the encoded picture into a pooled buffer and closes the image right away, so the
+     * reader gets its buffer back without waiting on any consumer.
+     */
+    private void keepInMemory(final Image image) {
+        try {
+            final ByteBuffer jpeg = image.getPlanes()[0].getBuffer();
+            final int exifRotation = isExifOrientationOnly() ? stillOrientation : 0;
+            storeInMemory(exifRotation == 0 ? new ByteBuffer[]{jpeg} : ExifOrientation.split(jpeg, exifRotation),
+                    jpeg.capacity() + ExifOrientation.SEGMENT_LENGTH);
+        } finally {
+            image.close();
+            stillQueue.done();
+        }
+    }
+
+    /**
+     * Copies an encoded picture into a pooled buffer and hands it out with PictureInMemory.
+     *
+     * @param parts    the picture, as {@link ExifOrientation#split} returns it
+     * @param capacity the size of a new pooled buffer, see {@link BufferPool#acquire}
+     */
+    private void storeInMemory(final ByteBuffer[] parts, final int capacity) {
+        final BufferPool.Buffer buffer = bufferPool.acquire(ExifOrientation.length(parts), capacity);
+        if (buffer != null) {
+            buffer.fill(parts);
+        }
+        activity.runOnUiThread(new Runnable() {
+            public void run() {
+                if (buffer == null) {
+                    MemoryPictureDropped();
+                    return;
+                }
+                final int handle = memoryPictureIds.incrementAndGet();
+                memoryPictures.put(handle, buffer);
+                PictureInMemory(handle, buffer.length());
+            }
+        });
+    }
+
+    private void releaseMemoryPictures() {
+        for (final BufferPool.Buffer buffer : memoryPictures.values()) {
+            buffer.release();
+        }
+        memoryPictures.clear();
+        bufferPool.clear();
+    }
+
+    @SimpleFunction(description = "Take a number of pictures in one burst. Frames are saved next to the output " +
+            "path with their number appended, an interval above zero keeps that much time between frames")
+    public void TakeBurst(final int count, final int intervalMs) {
+        if (count <= 0) return;
+        startSequence(count, intervalMs);
+    }
+
+    @SimpleFunction(description = "Keep taking pictures until stopped, frames are saved like in a burst")
+    public void StartContinuousCapture(final int intervalMs) {
+        startSequence(0, intervalMs);
+    }
+
+    @SimpleFunction(description = "Stop a running burst or continuous capture")
+    public void StopContinuousCapture() {
+        if (!capturePipeline.isActive()) return;
+        stopPacedCaptures();
+        if (capturePipeline.stop()) {
+            BurstCompleted(capturePipeline.saved(), capturePipeline.dropped());
+        }
+    }
+
+    @SimpleProperty
+    public void FaceFocusMode(int mode) {
+        faceDetectMode = mode;
+        applySetting(CaptureRequest.STATISTICS_FACE_DETECT_MODE, activeFaceDetectMode());
+        faceTracker.reset();
+        if (activeFaceDetectMode() == CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF) {
+            clearFaceRegions();
+        }
+    }
+
+    /**
+     * The face detection mode asked for, or off while the camera does not list it.
+     */
+    private int activeFaceDetectMode() {
+        return capabilities == null || capabilities.supportsFaceDetectMode(faceDetectMode)
+                ? faceDetectMode : CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
+    }
+
+    @SimpleProperty
+    public int FaceFocusMode() {
+        return faceDetectMode;
+    }
+
+    @SimpleProperty
+    public int FaceFocusModeDefault() {
+        return CaptureRequest.STATISTICS_FACE_DETECT_MODE_OFF;
+    }
+
+    @SimpleProperty
+    public int FaceFocusModeSimple() {
+        return CaptureRequest.STATISTICS_FACE_DETECT_MODE_SIMPLE;
+    }
+
+    @SimpleProperty
+    public int FaceFocusModeHigh() {
+        return CaptureRequest.STATISTICS_FACE_DETECT_MODE_FULL;
+    }
+
+    @DesignerProperty(defaultValue = "False", editorType = "boolean")
+    @SimpleProperty(description = "Focus and meter on the most prominent detected face. Needs FaceFocusMode " +
+            "to be Simple or High, the regions follow the face at most twice a second and FocusAt takes " +
+            "precedence until UnlockFocus")
+    public void FacePriorityMetering(final boolean enabled) {
+        facePriorityMetering = enabled;
+        if (!enabled) {
+            clearFaceRegions();
+        }
+    }
+
+    @SimpleProperty
+    public boolean FacePriorityMetering() {
+        return facePriorityMetering;
+    }
+
+    @SimpleFunction(description = "Take preview photo. The preview is drawn into a reused bitmap at the " +
+            "preview picture size and encoded in the background, a call while the last one is still " +
+            "being saved is skipped")
+    public void TakePreviewPicture() {
+        if (previewGrabInFlight) {
+            previewGrabsCoalesced++;
+            return;
+        }
+        if (cameraLayout == null || !cameraLayout.isAvailable()) {
+            return;
+        }
+        final int viewWidth = cameraLayout.getWidth();
+        final int viewHeight = cameraLayout.getHeight();
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return;
+        }
+        int width = previewPictureWidth;
+        int height = previewPictureHeight;
+        if (width <= 0 && height <= 0) {
+            width = viewWidth;
+            height = viewHeight;
+        } else if (width <= 0) {
+            width = Math.max(1, Math.round((float) height * viewWidth / viewHeight));
+        } else if (height <= 0) {
+            height = Math.max(1, Math.round((float) width * viewHeight / viewWidth));
+        }
+        final Bitmap pooled = bitmapPool.acquire(width, height);
+        final Bitmap bitmap = cameraLayout.getBitmap(pooled);
+        if (bitmap == null) {
+            // the view is not ready, the bitmap goes back to the pool unused
+            bitmapPool.release(pooled);
+            return;
+        }
+        final OutputManager manager = outputManager;
+        final String path = manager == null ? Output() : nextOutputPath(manager, previewExtension());
+        if (path == null) {
+            bitmapPool.release(bitmap);
+            return;
+        }
+        previewGrabInFlight = true;
+        previewGrabs++;
+        final Bitmap.CompressFormat format = previewCompressFormat();
+        final int quality = previewPictureQuality;
+        final boolean syncWrite = syncOutput;
+        photoWriter.submit(new PhotoWriter.Job() {
+            public void write() throws IOException {
+                try (FileOutputStream stream = new FileOutputStream(manager == null ? path : OutputManager.temporary(path))) {
+                    bitmap.compress(format, quality, stream);
+                    if (syncWrite) {
+                        stream.getFD().sync();
+                    }
+                }
+                if (manager != null) {
+                    manager.commit(path);
+                }
+            }
+        }, new PhotoWriter.Callback() {
+            public void onWritten(final boolean success) {
+                bitmapPool.release(bitmap);
+                previewGrabInFlight = false;
+                if (success) {
+                    SavedPhoto();
+                    PictureSaved(path);
+                }
+            }
+        });
+    }
+
+    private String previewExtension() {
+        switch (previewPictureFormat) {
+            case PREVIEW_FORMAT_PNG:
+                return "png";
+            case PREVIEW_FORMAT_WEBP:
+                return "webp";
+            default:
+                return "jpg";
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private Bitmap.CompressFormat previewCompressFormat() {
+        switch (previewPictureFormat) {
+            case PREVIEW_FORMAT_PNG:
+                return Bitmap.CompressFormat.PNG;
+            case PREVIEW_FORMAT_WEBP:
+                if (Build.VERSION.SDK_INT >= 30) {
+                    return previewPictureQuality == 100 ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP_LOSSY;
+                }
+                return Bitmap.CompressFormat.WEBP;
+            default:
+                return Bitmap.CompressFormat.JPEG;
+        }
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Width of preview pictures, 0 to follow the height and the view's aspect ratio, " +
+            "or the view width when both are 0")
+    public void PreviewPictureWidth(final int width) {
+        previewPictureWidth = width;
+    }
+
+    @SimpleProperty
+    public int PreviewPictureWidth() {
+        return previewPictureWidth;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Height of preview pictures, 0 to follow the width and the view's aspect ratio, " +
+            "or the view height when both are 0")
+    public void PreviewPictureHeight(final int height) {
+        previewPictureHeight = height;
+    }
+
+    @SimpleProperty
+    public int PreviewPictureHeight() {
+        return previewPictureHeight;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Format of preview pictures, use the PreviewFormat blocks")
+    public void PreviewPictureFormat(final int format) {
+        previewPictureFormat = format;
+    }
+
+    @SimpleProperty
+    public int PreviewPictureFormat() {
+        return previewPictureFormat;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "90")
+    @SimpleProperty(description = "Quality of preview pictures from 0 to 100, PNG ignores it")
+    public void PreviewPictureQuality(final int quality) {
+        previewPictureQuality = Math.max(0, Math.min(quality, 100));
+    }
+
+    @SimpleProperty
+    public int PreviewPictureQuality() {
+        return previewPictureQuality;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "90")
+    @SimpleProperty(description = "Quality of pictures from 1 to 100, used for JPEG and HEIC")
+    public void JpegQuality(final int quality) {
+        jpegQuality = Math.max(1, Math.min(quality, 100));
+    }
+
+    @SimpleProperty
+    public int JpegQuality() {
+        return jpegQuality;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Format of pictures, use the StillFormat blocks. HEIC falls back to JPEG when the " +
+            "camera cannot encode it, and applies from the next time the camera opens")
+    public void StillFormat(final int format) {
+        stillFormat = format;
+    }
+
+    @SimpleProperty
+    public int StillFormat() {
+        return stillFormat;
+    }
+
+    @SimpleProperty(description = "The format pictures are actually encoded in by the open camera")
+    public int StillFormatInUse() {
+        return activeStillFormat == ImageFormat.HEIC ? STILL_FORMAT_HEIC : STILL_FORMAT_JPEG;
+    }
+
+    @SimpleProperty
+    public int StillFormatJpeg() {
+        return STILL_FORMAT_JPEG;
+    }
+
+    @SimpleProperty
+    public int StillFormatHeic() {
+        return STILL_FORMAT_HEIC;
+    }
+
+    @SimpleProperty
+    public int PreviewFormatJpeg() {
+        return PREVIEW_FORMAT_JPEG;
+    }
+
+    @SimpleProperty
+    public int PreviewFormatPng() {
+        return PREVIEW_FORMAT_PNG;
+    }
+
+    @SimpleProperty
+    public int PreviewFormatWebp() {
+        return PREVIEW_FORMAT_WEBP;
+    }
+
+    @SimpleFunction(description = "Set zoom, make sure the values are in limit")
+    public void Zoom(final float zoomRatio) {
+        if (hasZoomSupport && captureRequestBuilder != null && isSessionReady()) {
+            setZoom(captureRequestBuilder, zoomRatio, false);
+        }
+    }
+
+    public void setZoom(@NonNull final CaptureRequest.Builder builder, final float zoom, final boolean isCapture) {
+        final float newZoom = Math.max(1.0f, Math.min(zoom, maxZoom));
+        final Rect previousCrop = builder.get(CaptureRequest.SCALER_CROP_REGION);
+        setCropRegion(builder, newZoom);
+        if (!isCapture) {
+            if (!rectCrop.equals(previousCrop)) {
+                requestPreviewUpdate();
+            }
+            ZoomChanged();
+        }
+        currentZoom = newZoom;
+    }
+
+    private void setCropRegion(final CaptureRequest.Builder builder, final float zoom) {
+        final int centerX = rectSensor.width() / 2;
+        final int centerY = rectSensor.height() / 2;
+        final int deltaX = (int)(0.5f * rectSensor.width() / zoom);
+        final int deltaY = (int)(0.5f * rectSensor.height() / zoom);
+        rectCrop.set(centerX - deltaX, centerY - deltaY, centerX + deltaX, centerY + deltaY);
+        builder.set(CaptureRequest.SCALER_CROP_REGION, rectCrop);
+    }
+
+    private final Choreographer.FrameCallback zoomFrameCallback = new Choreographer.FrameCallback() {
+        public void doFrame(final long frameTimeNanos) {
+            final float zoom = zoomGesture.onFrame();
+            if (zoom > 0 && captureRequestBuilder != null && isSessionReady()) {
+                setCropRegion(captureRequestBuilder, zoom);
+                currentZoom = zoom;
+                requestPreviewUpdate();
+            }
+            notifyZoomGesture(frameTimeNanos);
+        }
+    };
+
+    private void notifyZoomGesture(final long nowNanos) {
+        final int direction = zoomGesture.notification(nowNanos);
+        if (direction != ZoomGesture.NO_CHANGE) {
+            ZoomByPinch(direction == ZoomGesture.INCREASED);
+            ZoomChanged();
+        }
+    }
+
+    private void endZoomGesture() {
+        zoomGesture.end();
+        if (!zoomGesture.isFrameScheduled()) {
+            notifyZoomGesture(System.nanoTime());
+        }
+    }
+
+    @SimpleFunction(description = "Locks the camera focus")
+    public void LockFocus() {
+        if(captureRequestBuilder == null || !isSessionReady()) return;
+        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, 1);
+        try {
+            captureBackend.capture(captureRequestBuilder.build(), captureListener);
+        }
+        catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @SimpleFunction(description = "Focus and meter on a point of the camera view, given in view pixels. " +
+            "FocusLocked or FocusUnlocked fires once the camera has settled")
+    public void FocusAt(final float x, final float y) {
+        if (captureRequestBuilder == null || !isSessionReady() || capabilities == null) return;
+        previewTransform.getValues(transformValues);
+        final Rect crop = rectCrop.isEmpty() ? rectSensor : rectCrop;
+        final int[] bounds = previewBounds(crop);
+        final int[] point = new int[2];
+        if (!MeteringMath.viewToSensor(transformValues, x, y, cameraLayout.getWidth(), cameraLayout.getHeight(),
+                capabilities.sensorOrientation, capabilities.lensFacing == CameraCharacteristics.LENS_FACING_FRONT,
+                bounds, point)) {
+            return;
+        }
+        final int[] region = new int[4];
+        MeteringMath.region(point[0], point[1], crop.width() / FOCUS_REGION_FRACTION, bounds, region);
+        final MeteringRectangle[] regions = {new MeteringRectangle(new Rect(region[0], region[1], region[2], region[3]),
+                MeteringRectangle.METERING_WEIGHT_MAX - 1)};
+        final boolean hasAf = capabilities.maxAfRegions > 0 && capabilities.supportsAfMode(CaptureRequest.CONTROL_AF_MODE_AUTO);
+        if (hasAf && !focusLockedByUser) {
+            afModeBeforeFocusAt = captureRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE);
+            afOverrideBeforeFocusAt = afModeOverride;
+        }
+        if (hasAf) {
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, regions);
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_AUTO);
+            afModeOverride = CaptureRequest.CONTROL_AF_MODE_AUTO;
+        }
+        if (capabilities.maxAeRegions > 0) {
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, regions);
+        }
+        meteringRegions = regions;
+        focusLockedByUser = hasAf;
+        faceRegionsSet = false;
+        updatePreview();
+        runFocusSequence(hasAf, FOCUS_TIMEOUT_MS);
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "10000000")
+    @SimpleProperty(description = "Video bit rate in bits per second")
+    public void VideoBitRate(final int bitRate) {
+        videoBitRate = bitRate;
+    }
+
+    @SimpleProperty
+    public int VideoBitRate() {
+        return videoBitRate;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "30")
+    @SimpleProperty(description = "Video frame rate")
+    public void VideoFrameRate(final int frameRate) {
+        videoFrameRate = frameRate;
+    }
+
+    @SimpleProperty
+    public int VideoFrameRate() {
+        return videoFrameRate;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Frame rate the preview should run at, 0 to leave it to the camera. The " +
+            "camera range ending at it with the highest minimum is used, so the rate does not drop in low " +
+            "light where the camera allows that. While recording VideoFrameRate is used instead")
+    public void TargetFrameRate(final int frameRate) {
+        targetFrameRate = frameRate;
+        if (capabilities != null && highSpeedRange == null && !videoRecorder.isRecording()) {
+            applySetting(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange(frameRate));
+        }
+    }
+
+    @SimpleProperty
+    public int TargetFrameRate() {
+        return targetFrameRate;
+    }
+
+    @DesignerProperty(defaultValue = "False", editorType = "boolean")
+    @SimpleProperty(description = "Stream at a high TargetFrameRate such as 120 or 240 in a constrained " +
+            "high-speed session, if the camera supports that rate. Pictures, bursts and frame analysis are " +
+            "not available then. Takes effect the next time the camera opens")
+    public void HighSpeed(final boolean enabled) {
+        highSpeed = enabled;
+    }
+
+    @SimpleProperty
+    public boolean HighSpeed() {
+        return highSpeed;
+    }
+
+    @SimpleProperty(description = "Whether the open camera runs a high-speed session")
+    public boolean HighSpeedActive() {
+        return highSpeedRange != null;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Wanted video width, 0 for the largest size up to 1080p")
+    public void VideoWidth(final int width) {
+        videoWidth = width;
+    }
+
+    @SimpleProperty
+    public int VideoWidth() {
+        return videoWidth;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER, defaultValue = "0")
+    @SimpleProperty(description = "Wanted video height, 0 for the largest size up to 1080p")
+    public void VideoHeight(final int height) {
+        videoHeight = height;
+    }
+
+    @SimpleProperty
+    public int VideoHeight() {
+        return videoHeight;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "True")
+    @SimpleProperty(description = "Let focus and exposure settle before a picture is taken")
+    public void ConvergeBeforeCapture(final boolean condition) {
+        convergeBeforeCapture = condition;
+    }
+
+    @SimpleProperty
+    public boolean ConvergeBeforeCapture() {
+        return convergeBeforeCapture;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "Focus where the camera view is tapped")
+    public void TapToFocus(final boolean condition) {
+        tapToFocus = condition;
+    }
+
+    @SimpleProperty
+    public boolean TapToFocus() {
+        return tapToFocus;
+    }
+
+    /**
+     * Triggers AF and AE precapture once on top of the repeating request; the outcome is picked
+     * up from the repeating request's results.
+     */
+    private void runFocusSequence(final boolean triggerAf, final long timeoutMs) {
+        try {
+            if (triggerAf) {
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
+            }
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+            focusMachine.start(System.nanoTime(), timeoutMs, triggerAf, true);
+            captureBackend.capture(captureRequestBuilder.build(), focusTriggerListener);
+        }
+        catch (CameraAccessException e) {
+            focusMachine.cancel();
+            shotPending = false;
+            e.printStackTrace();
+        }
+        finally {
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+        }
+    }
+
+    /**
+     * Stages the faces of a preview result, camera thread. The UI thread is only posted to when
+     * they changed.
+     */
+    private void trackFaces(final CaptureResult result) {
+        final Integer mode = result.get(CaptureResult.STATISTICS_FACE_DETECT_MODE);
+        if (mode == null || mode == CaptureResult.STATISTICS_FACE_DETECT_MODE_OFF) {
+            return;
+        }
+        final Face[] faces = result.get(CaptureResult.STATISTICS_FACES);
+        faceTracker.begin();
+        if (faces != null) {
+            for (final Face face : faces) {
+                final Rect bounds = face.getBounds();
+                faceTracker.add(bounds.left, bounds.top, bounds.right, bounds.bottom, face.getScore());
+            }
+        }
+        if (faceTracker.end(System.nanoTime())) {
+            activity.runOnUiThread(facesReporter);
+        }
+    }
+
+    private final Runnable facesReporter = new Runnable() {
+        public void run() {
+            if (cameraLayout == null || capabilities == null || rectSensor == null) {
+                return;
+            }
+            final int count = faceTracker.copyReported(faceRects, faceScores);
+            if (facePriorityMetering) {
+                meterOnFace(count);
+            }
+            previewTransform.getValues(transformValues);
+            final int[] bounds = previewBounds(rectCrop.isEmpty() ? rectSensor : rectCrop);
+            final boolean mirrored = capabilities.lensFacing == CameraCharacteristics.LENS_FACING_FRONT;
+            final int width = cameraLayout.getWidth();
+            final int height = cameraLayout.getHeight();
+            final List<YailDictionary> faces = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                MeteringMath.sensorToView(transformValues, faceRects[i * 4], faceRects[i * 4 + 1], width, height,
+                        capabilities.sensorOrientation, mirrored, bounds, facePoint);
+                final float x1 = facePoint[0];
+                final float y1 = facePoint[1];
+                MeteringMath.sensorToView(transformValues, faceRects[i * 4 + 2], faceRects[i * 4 + 3], width, height,
+                        capabilities.sensorOrientation, mirrored, bounds, facePoint);
+                final YailDictionary face = new YailDictionary();
+                face.put("Left", Math.round(Math.min(x1, facePoint[0])));
+                face.put("Top", Math.round(Math.min(y1, facePoint[1])));
+                face.put("Right", Math.round(Math.max(x1, facePoint[0])));
+                face.put("Bottom", Math.round(Math.max(y1, facePoint[1])));
+                face.put("Score", faceScores[i]);
+                faces.add(face);
+            }
+            FacesDetected(count, faces);
+        }
+    };
+
+    /**
+     * Points the AF and AE regions at the dominant face, leaving a FocusAt lock or a running
+     * focus sequence alone and updating the request at most every {@link #FACE_REGION_INTERVAL_MS}.
+     */
+    private void meterOnFace(final int count) {
+        if (focusLockedByUser || focusMachine.state() != FocusStateMachine.IDLE || captureRequestBuilder == null) {
+            return;
+        }
+        if (count == 0) {
+            clearFaceRegions();
+            return;
+        }
+        final long now = System.nanoTime();
+        if (faceRegionsSet && now - faceRegionsAt < FACE_REGION_INTERVAL_MS * 1_000_000L) {
+            return;
+        }
+        final int face = FaceTracker.dominant(faceRects, faceScores, count);
+        final MeteringRectangle[] regions = {new MeteringRectangle(new Rect(faceRects[face * 4],
+                faceRects[face * 4 + 1], faceRects[face * 4 + 2], faceRects[face * 4 + 3]),
+                MeteringRectangle.METERING_WEIGHT_MAX - 1)};
+        if (capabilities.maxAfRegions > 0) {
+            applySetting(CaptureRequest.CONTROL_AF_REGIONS, regions);
+        }
+        if (capabilities.maxAeRegions > 0) {
+            applySetting(CaptureRequest.CONTROL_AE_REGIONS, regions);
+        }
+        meteringRegions = regions;
+        faceRegionsSet = true;
+        faceRegionsAt = now;
+    }
+
+    /**
+     * Hands metering back to the camera if it was following a face.
+     */
+    private void clearFaceRegions() {
+        if (!faceRegionsSet || focusLockedByUser) {
+            return;
+        }
+        faceRegionsSet = false;
+        meteringRegions = null;
+        applySetting(CaptureRequest.CONTROL_AF_REGIONS, null);
+        applySetting(CaptureRequest.CONTROL_AE_REGIONS, null);
+    }
+
+    private void handleFocusResult(final CaptureResult result) {
+        if (focusMachine.state() == FocusStateMachine.IDLE) {
+            return;
+        }
+        final int outcome = focusMachine.onResult(result.get(CaptureResult.CONTROL_AF_STATE),
+                result.get(CaptureResult.CONTROL_AE_STATE), System.nanoTime());
+        if (outcome != FocusStateMachine.LOCKED && outcome != FocusStateMachine.TIMED_OUT) {
+            return;
+        }
+        if (shotPending) {
+            shotPending = false;
+            final long afMillis = focusMachine.afNanos() / 1_000_000L;
+            final long aeMillis = focusMachine.aeNanos() / 1_000_000L;
+            final boolean timedOut = outcome == FocusStateMachine.TIMED_OUT;
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    CaptureConverged(afMillis, aeMillis, timedOut);
+                    captureStill();
+                }
+            });
+            return;
+        }
+        final boolean focused = outcome == FocusStateMachine.LOCKED && focusMachine.isFocused();
+        activity.runOnUiThread(new Runnable() {
+            public void run() {
+                if (focused) {
+                    FocusLocked();
+                } else {
+                    FocusUnlocked();
+                }
+            }
+        });
+    }
+
+    @SimpleFunction(description = "Check if the camera is active")
+    public boolean CameraActive() {
+        return cameraLayout == null ? false : cameraLayout.isAvailable() ? true : false;
+    }
+
+    @SimpleFunction(description = "Unlocks the camera focus, a FocusAt point is released and the focus mode " +
+            "from before it comes back")
+    public void UnlockFocus() {
+        final boolean lockedAt = focusLockedByUser;
+        focusLockedByUser = false;
+        if(captureRequestBuilder == null || !isSessionReady()) return;
+        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, 2);
+        try {
+            captureBackend.capture(captureRequestBuilder.build(), captureListener);
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+        if (lockedAt) {
+            afModeOverride = afOverrideBeforeFocusAt;
+            if (afModeBeforeFocusAt != null) {
+                applySetting(CaptureRequest.CONTROL_AF_MODE, afModeBeforeFocusAt);
+            }
+        }
+        meteringRegions = null;
+        faceRegionsSet = false;
+        applySetting(CaptureRequest.CONTROL_AF_REGIONS, null);
+        applySetting(CaptureRequest.CONTROL_AE_REGIONS, null);
+    }
+
+    /**
+     * The part of the crop region the preview shows, as left, top, right, bottom.
+     */
+    private int[] previewBounds(final Rect crop) {
+        final int[] bounds = new int[4];
+        MeteringMath.streamCrop(new int[]{crop.left, crop.top, crop.right, crop.bottom},
+                imageDimension == null ? 0 : imageDimension.getWidth(),
+                imageDimension == null ? 0 : imageDimension.getHeight(), bounds);
+        return bounds;
+    }
+
+    @SimpleProperty
+    public float MaxZoom() {
+        return maxZoom;
+    }
+
+    @DesignerProperty(defaultValue = "True", editorType = "boolean")
+    @SimpleProperty(description = "Set whether camera view should be visible")
+    public void Visible(final boolean visible) {
+        if (cameraView != null) {
+            cameraView.setVisibility(visible ? 0 : 4);
+        }
+        this.visible = visible;
     }
 
     @SimpleProperty
@@ -503,52 +1958,389 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
         return visible;
     }
 
-    @SimpleFunction(description = "Set focus distance")
-    public void Focus(final float distance) {
-        if(captureRequestBuilder == null) return;
-        final CameraManager cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
-        CameraCharacteristics characteristics = null;
+    @SimpleFunction(description = "Set focus distance")
+    public void Focus(final float distance) {
+        if(captureRequestBuilder == null || capabilities == null) return;
+        final float minimumLens = capabilities.minFocusDistance;
+        final float num = distance * minimumLens / 100.0f;
+        afModeOverride = CaptureRequest.CONTROL_AF_MODE_OFF;
+        manualFocusDistance = num;
+        applySetting(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
+        applySetting(CaptureRequest.LENS_FOCUS_DISTANCE, num);
+        RefreshCamera();
+    }
+
+    private void zoomSettings() {
+        rectSensor = capabilities.sensorRect;
+        maxZoom = capabilities.maxZoom;
+        hasZoomSupport = capabilities.hasZoomSupport();
+    }
+
+    @SimpleFunction(description = "Refreshes camera")
+    public void RefreshCamera() {
+        if (cameraLayout == null || cameraDevice == null || captureRequestBuilder == null) {
+            return;
+        }
+        applySetting(CaptureRequest.FLASH_MODE, (flashMode ? 2 : 0));
+        applySetting(CaptureRequest.CONTROL_EFFECT_MODE, cameraStyle);
+        applySetting(CaptureRequest.NOISE_REDUCTION_MODE, noiseReductionMode);
+        applySetting(CaptureRequest.STATISTICS_FACE_DETECT_MODE, activeFaceDetectMode());
+        previewFlush.run();
+        RefreshedCamera();
+    }
+
+    @SimpleFunction(description = "Hold back setting changes until CommitUpdate, so they reach the camera " +
+            "together. Calls can be nested")
+    public void BeginUpdate() {
+        settingsBatch.begin();
+    }
+
+    @SimpleFunction(description = "Send the setting changes made since BeginUpdate in one request, " +
+            "nothing is sent if no setting actually changed")
+    public void CommitUpdate() {
+        if (settingsBatch.end()) {
+            previewFlush.run();
+        }
+    }
+
+    /**
+     * Sets a key of the preview request if its value differs, the change is sent with the next
+     * flush. Changes made outside {@link #BeginUpdate} are flushed after the current UI pass.
+     */
+    private <T> void applySetting(final CaptureRequest.Key<T> key, final T value) {
+        if (captureRequestBuilder == null || SettingsBatch.sameValue(captureRequestBuilder.get(key), value)) {
+            return;
+        }
+        captureRequestBuilder.set(key, value);
+        requestPreviewUpdate();
+    }
+
+    private void requestPreviewUpdate() {
+        if (settingsBatch.markDirty()) {
+            mainHandler.post(previewFlush);
+        }
+    }
+
+    private final Runnable previewFlush = new Runnable() {
+        public void run() {
+            if (settingsBatch.takeFlush() && captureRequestBuilder != null && isSessionReady()) {
+                updatePreview();
+            }
+        }
+    };
+
+    @SimpleFunction(description = "Switch to another camera, keeping the camera view")
+    public void SwitchCamera(final int cameraType) {
+        if (cameraType == this.cameraType && deviceLifecycle.state() != DeviceLifecycle.CLOSED) {
+            return;
+        }
+        final String previousId = cameraID;
+        this.cameraType = cameraType;
+        capabilities = null;
+        if (cameraLayout == null || !cameraLayout.isAvailable() || !deviceLifecycle.requestSwitch()) {
+            return;
+        }
+        switchStartedAt = System.nanoTime();
+        final CameraManager cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+        closeBackend();
+        closeRetiringDevice();
+        if (cameraDevice != null) {
+            if (canOpenConcurrently(cameraManager, previousId, resolveCameraId())) {
+                retiringDevice = cameraDevice;
+            } else {
+                cameraDevice.close();
+            }
+            cameraDevice = null;
+        }
+        openCamera(cameraLayout.getWidth(), cameraLayout.getHeight());
+        configureTransform(cameraLayout.getWidth(), cameraLayout.getHeight());
+    }
+
+    /**
+     * Whether the HAL allows both cameras to be open at once, so the new one can be opened
+     * before the old one is closed.
+     */
+    private static boolean canOpenConcurrently(final CameraManager cameraManager, final String first, final String second) {
+        if (Build.VERSION.SDK_INT < 30 || first == null || second == null) {
+            return false;
+        }
+        try {
+            for (final Set<String> combination : cameraManager.getConcurrentCameraIds()) {
+                if (combination.contains(first) && combination.contains(second)) {
+                    return true;
+                }
+            }
+        }
+        catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Closes a device the lifecycle waits for, its {@code onClosed} moves the lifecycle on.
+     */
+    private void closeTracked(final CameraDevice camera) {
+        closingDevice = camera;
+        camera.close();
+    }
+
+    private void deviceLost(final CameraDevice camera) {
+        if (camera == retiringDevice) {
+            closeRetiringDevice();
+            return;
+        }
+        if (camera == cameraDevice) {
+            closeBackend();
+            cameraDevice = null;
+        } else if (deviceLifecycle.state() != DeviceLifecycle.OPENING) {
+            camera.close();
+            return;
+        }
+        deviceLifecycle.onLost();
+        closeTracked(camera);
+    }
+
+    /**
+     * Opens the camera the lifecycle asked for, with the cached capabilities and the view that
+     * is already there. Without a view the open waits for the surface to become available.
+     */
+    private void reopenCamera() {
+        if (paused || cameraLayout == null || !cameraLayout.isAvailable()) {
+            deviceLifecycle.onOpenFailed(true);
+            return;
+        }
+        openCamera(cameraLayout.getWidth(), cameraLayout.getHeight());
+        configureTransform(cameraLayout.getWidth(), cameraLayout.getHeight());
+    }
+
+    /**
+     * Releases the session, the readers and the device so other apps can use the camera. The
+     * device is closed through the lifecycle, so a resume that follows quickly reopens it only
+     * once the close has finished.
+     */
+    private void releaseCamera() {
+        focusMachine.cancel();
+        shotPending = false;
+        stopPacedCaptures();
+        if (capturePipeline.stop()) {
+            BurstCompleted(capturePipeline.saved(), capturePipeline.dropped());
+        }
+        closeBackend();
+        closeRetiringDevice();
+        if (deviceLifecycle.requestClose() && cameraDevice != null) {
+            closeTracked(cameraDevice);
+        }
+        cameraDevice = null;
+        videoRecorder.release();
+        analysisStream.close();
+        zslRing.close();
+        zslActive = false;
+        bitmapPool.clear();
+        disableOrientationListener();
+    }
+
+    @Override
+    public void onPause() {
+        paused = true;
+        releaseCamera();
+    }
+
+    @Override
+    public void onResume() {
+        paused = false;
+        if (cameraLayout != null) {
+            enableOrientationListener();
+        }
+        if (deviceLifecycle.requestOpen()) {
+            reopenCamera();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        paused = true;
+        releaseCamera();
+        deviceLifecycle.reset();
+        closingDevice = null;
+        mainHandler.removeCallbacks(metricsReporter);
+        stopCameraThread();
+        photoWriter.shutdown();
+        releaseMemoryPictures();
+    }
+
+    private void closeRetiringDevice() {
+        if (retiringDevice != null) {
+            retiringDevice.close();
+            retiringDevice = null;
+        }
+    }
+
+    @SimpleFunction(description = "Start recording video to a path. The encoder is added to the camera session " +
+            "the first time, later recordings reuse the session, and pictures can be taken while recording")
+    public void StartRecording(final String path) {
+        if (videoRecorder.isRecording() || pendingRecording != null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < 23) {
+            RecordingFailed("Recording needs Android 6.0 or newer");
+            return;
+        }
+        if (!isSessionReady() || capabilities == null || imageDimension == null || capturePipeline.isActive()) {
+            RecordingFailed("The camera is not ready");
+            return;
+        }
+        videoDimension = highSpeedRange != null ? imageDimension : chooseVideoSize();
+        if (videoDimension == null) {
+            RecordingFailed("The camera does not support recording");
+            return;
+        }
+        if (videoRecorder.surface(videoDimension) != null) {
+            startRecorder(path);
+            return;
+        }
+        if (stillQueue.isBusy() || shotPending) {
+            RecordingFailed("A picture is being taken");
+            return;
+        }
         try {
-            characteristics = cameraManager.getCameraCharacteristics(cameraID);
+            videoRecorder.prepareSurface(videoDimension, recordingFrameRate(), videoBitRate,
+                    new File(activity.getCacheDir(), "ProCamera-encoder.mp4"));
         }
-        catch (CameraAccessException e) {
+        catch (IOException e) {
             e.printStackTrace();
+            RecordingFailed(String.valueOf(e.getMessage()));
+            return;
         }
-        final float minimumLens = characteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
-        final float num = distance * minimumLens / 100.0f;
-        captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, 0);
-        captureRequestBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, num);
-        RefreshCamera();
+        pendingRecording = path;
+        createCameraPreview();
     }
 
-    private void zoomSettings() {
-        final CameraManager manager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
-        CameraCharacteristics characteristics = null;
+    @SimpleFunction(description = "Stop the recording, RecordingStats fires once the file is finished")
+    public void StopRecording() {
+        finishRecording(true);
+    }
+
+    @SimpleFunction(description = "Whether a video is being recorded")
+    public boolean IsRecording() {
+        return videoRecorder.isRecording();
+    }
+
+    private void startRecorder(final String path) {
         try {
-            characteristics = manager.getCameraCharacteristics(cameraID);
+            videoRecorder.start(path, recordingFrameRate(), videoBitRate, recordingOrientation());
         }
-        catch (CameraAccessException e) {
+        catch (IOException | RuntimeException e) {
             e.printStackTrace();
+            RecordingFailed(String.valueOf(e.getMessage()));
+            return;
         }
-        rectSensor = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-        maxZoom = 1.0f;
-        hasZoomSupport = false;
-        final Float value = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
-        maxZoom = ((value == null || value < 1.0f) ? 1.0f : value);
-        hasZoomSupport = (Float.compare(maxZoom, 1.0f) > 0);
+        captureRequestBuilder.addTarget(videoRecorder.surface());
+        if (highSpeedRange == null) {
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange(videoFrameRate));
+        }
+        updatePreview();
+        RecordingStarted(path);
     }
 
-    @SimpleFunction(description = "Refreshes camera")
-    public void RefreshCamera() {
-        if (cameraLayout == null || cameraDevice == null || captureRequestBuilder == null) {
+    /**
+     * Takes the encoder out of the repeating request and finishes the file.
+     *
+     * @param resumePreview send the repeating request without the encoder, false when the
+     *                      session is about to be closed anyway
+     */
+    private void finishRecording(final boolean resumePreview) {
+        if (!videoRecorder.isRecording()) {
             return;
         }
-        captureRequestBuilder.set(CaptureRequest.FLASH_MODE, (flashMode ? 2 : 0));
-        captureRequestBuilder.set(CaptureRequest.CONTROL_EFFECT_MODE, cameraStyle);
-        captureRequestBuilder.set(CaptureRequest.NOISE_REDUCTION_MODE, noiseReductionMode);
-        captureRequestBuilder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE, faceDetectMode);
-        updatePreview();
-        RefreshedCamera();
+        if (captureRequestBuilder != null) {
+            captureRequestBuilder.removeTarget(videoRecorder.surface());
+            if (highSpeedRange == null) {
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange(targetFrameRate));
+            }
+            if (resumePreview && isSessionReady()) {
+                updatePreview();
+            }
+        }
+        final String path = videoRecorder.path();
+        final long duration = videoRecorder.durationMillis();
+        final long frames = videoRecorder.frames();
+        final boolean success = videoRecorder.stop();
+        RecordingStats(path, duration, frames, success ? new File(path).length() : 0, success);
+    }
+
+    /**
+     * The AE range for a frame rate, see {@link FpsRangeSelector#select}, or null to leave the
+     * frame rate to the camera.
+     */
+    private Range<Integer> fpsRange(final int frameRate) {
+        if (frameRate <= 0) {
+            return null;
+        }
+        final int[] ranges = capabilities.fpsRanges();
+        final int best = FpsRangeSelector.select(ranges, frameRate);
+        return best < 0 ? null : new Range<>(ranges[best], ranges[best + 1]);
+    }
+
+    private int recordingFrameRate() {
+        return highSpeedRange != null ? highSpeedRange.getUpper() : videoFrameRate;
+    }
+
+    private int recordingOrientation() {
+        return captureOrientation();
+    }
+
+    /**
+     * Clockwise rotation that makes a picture upright for how the device is held now. Until the
+     * orientation listener reported, the display rotation stands in for the device orientation.
+     */
+    private int captureOrientation() {
+        int device = deviceOrientation;
+        if (device == OrientationMath.UNKNOWN) {
+            device = OrientationMath.deviceFromDisplay(
+                    ORIENTATIONS.get(activity.getWindowManager().getDefaultDisplay().getRotation()));
+        }
+        return OrientationMath.jpegOrientation(capabilities.sensorOrientation,
+                capabilities.lensFacing == CameraCharacteristics.LENS_FACING_FRONT, device);
+    }
+
+    private void enableOrientationListener() {
+        if (orientationListener == null) {
+            orientationListener = new OrientationEventListener(activity) {
+                public void onOrientationChanged(final int orientation) {
+                    deviceOrientation = OrientationMath.snap(orientation, deviceOrientation);
+                }
+            };
+        }
+        if (orientationListener.canDetectOrientation()) {
+            orientationListener.enable();
+        }
+    }
+
+    private void disableOrientationListener() {
+        if (orientationListener != null) {
+            orientationListener.disable();
+        }
+        deviceOrientation = OrientationMath.UNKNOWN;
+    }
+
+    @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+    @SimpleProperty(description = "Leave picture pixels in sensor orientation and only write the rotation to " +
+            "the EXIF orientation tag, instead of asking the camera to rotate them")
+    public void ExifOrientationOnly(final boolean condition) {
+        exifOrientationOnly = condition;
+    }
+
+    @SimpleProperty
+    public boolean ExifOrientationOnly() {
+        return exifOrientationOnly;
+    }
+
+    /**
+     * EXIF can only be rewritten in JPEG files, HEIC stores the rotation as metadata anyway.
+     */
+    private boolean isExifOrientationOnly() {
+        return exifOrientationOnly && activeStillFormat == ImageFormat.JPEG;
     }
 
     @SimpleFunction(description = "Check if supported on the device")
@@ -559,6 +2351,8 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
     @SimpleFunction(description = "Reset camera")
     public void ResetCamera() {
         try {
+            closeBackend();
+            closeRetiringDevice();
             if (null != cameraDevice) {
                 cameraDevice.close();
                 cameraDevice = null;
@@ -567,22 +2361,176 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
         catch (Exception e) {
             Log.e("Custom Camera Error", e.getMessage());
         }
+        deviceLifecycle.reset();
+        closingDevice = null;
+        disableOrientationListener();
+        videoRecorder.release();
+        analysisStream.close();
+        zslRing.close();
+        zslActive = false;
+        stopCameraThread();
         removeView((FrameLayout) view);
     }
 
-    private void openCamera() {
+    private void openCamera(final int viewWidth, final int viewHeight) {
         final CameraManager cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);;
         try {
-            cameraID = cameraManager.getCameraIdList()[cameraType];
-            final CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(this.cameraID);
-            final StreamConfigurationMap configurationMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            assert cameraManager != null;
-            imageDimension = configurationMap.getOutputSizes(SurfaceTexture.class)[0];
-            cameraManager.openCamera(cameraID, stateCallback, null);
+            final String previousId = cameraID;
+            cameraID = resolveCameraId();
+            if (cameraID != null && !cameraID.equals(previousId)) {
+                forgetFocusAndMetering();
+            }
+            if (cameraID == null) {
+                deviceLifecycle.onOpenFailed(false);
+                InitializeFailed();
+                return;
+            }
+            capabilities = capabilityRegistry.get(cameraID);
+            zoomSettings();
+            selectSizes(viewWidth, viewHeight);
+            if (imageDimension == null) {
+                deviceLifecycle.onOpenFailed(false);
+                InitializeFailed();
+                return;
+            }
+            openStartedAt = System.nanoTime();
+            cameraManager.openCamera(cameraID, stateCallback, cameraHandler);
+        }
+        catch (CameraAccessException | SecurityException e) {
+            deviceLifecycle.onOpenFailed(false);
+            e.printStackTrace();
+        }
+    }
+
+    private String resolveCameraId() {
+        try {
+            final CameraResolver.Lens lens = CameraResolver.resolve(capabilityRegistry.lenses(), cameraType);
+            return lens == null ? null : lens.id;
         }
         catch (CameraAccessException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Picks the still size first, then the smallest preview that covers the view with the same
+     * aspect ratio, and sizes the texture view to that ratio.
+     */
+    private void selectSizes(final int viewWidth, final int viewHeight) {
+        activeStillFormat = ImageFormat.JPEG;
+        if (stillFormat == STILL_FORMAT_HEIC && Build.VERSION.SDK_INT >= 29
+                && capabilities.outputSizes(ImageFormat.HEIC).length > 0) {
+            activeStillFormat = ImageFormat.HEIC;
+        }
+        jpegDimension = chooseSize(capabilities.outputSizes(activeStillFormat), 0, 0, captureWidth, captureHeight, false);
+        if (jpegDimension == null) {
+            jpegDimension = new Size(640, 480);
+        }
+        final boolean swapped = isDimensionSwapped();
+        if (selectHighSpeedSize()) {
+            videoDimension = imageDimension;
+        } else {
+            imageDimension = chooseSize(capabilities.previewSizes(),
+                    (float) jpegDimension.getWidth() / jpegDimension.getHeight(), MAX_PREVIEW_PIXELS,
+                    swapped ? viewHeight : viewWidth, swapped ? viewWidth : viewHeight, true);
+            if (imageDimension == null) {
+                return;
+            }
+            videoDimension = chooseVideoSize();
         }
+        if (swapped) {
+            cameraLayout.setAspectRatio(imageDimension.getHeight(), imageDimension.getWidth());
+        } else {
+            cameraLayout.setAspectRatio(imageDimension.getWidth(), imageDimension.getHeight());
+        }
+    }
+
+    /**
+     * In high-speed mode, picks the high-speed size closest to the video size among those that
+     * reach the target frame rate. Preview and recording then both stream at that size.
+     *
+     * @return false to use a regular session
+     */
+    private boolean selectHighSpeedSize() {
+        highSpeedRange = null;
+        if (!highSpeed || !capabilities.highSpeedVideo) {
+            return false;
+        }
+        final List<Size> candidates = new ArrayList<>();
+        for (final Size size : capabilities.highSpeedSizes()) {
+            if (FpsRangeSelector.selectHighSpeed(capabilities.highSpeedFpsRanges(size), targetFrameRate) >= 0) {
+                candidates.add(size);
+            }
+        }
+        final Size size = chooseSize(candidates.toArray(new Size[0]), 0, MAX_VIDEO_PIXELS, videoWidth, videoHeight, false);
+        if (size == null) {
+            return false;
+        }
+        final int[] ranges = capabilities.highSpeedFpsRanges(size);
+        final int best = FpsRangeSelector.selectHighSpeed(ranges, targetFrameRate);
+        highSpeedRange = new Range<>(ranges[best], ranges[best + 1]);
+        imageDimension = size;
+        return true;
+    }
+
+    private Size chooseVideoSize() {
+        return chooseSize(capabilities.videoSizes(),
+                (float) imageDimension.getWidth() / imageDimension.getHeight(), MAX_VIDEO_PIXELS, videoWidth, videoHeight, false);
+    }
+
+    /**
+     * Opens the zero shutter lag ring at the still size. Reprocessing is used when the camera
+     * takes YUV input, or PRIVATE input as long as frames need not be measured for sharpness.
+     *
+     * @return the ring surface, or null if the memory budget does not hold a single frame
+     */
+    private Surface openZslRing() {
+        int format = ImageFormat.YUV_420_888;
+        Size[] sizes = capabilities.outputSizes(ImageFormat.YUV_420_888);
+        if (capabilities.yuvReprocessing && capabilities.inputSizes(ImageFormat.YUV_420_888).length > 0) {
+            sizes = capabilities.inputSizes(ImageFormat.YUV_420_888);
+            zslReprocessFormat = ImageFormat.YUV_420_888;
+        } else if (capabilities.privateReprocessing && zslSelection != ZslFrameSelector.SHARPEST
+                && capabilities.inputSizes(ImageFormat.PRIVATE).length > 0) {
+            format = ImageFormat.PRIVATE;
+            sizes = capabilities.inputSizes(ImageFormat.PRIVATE);
+            zslReprocessFormat = ImageFormat.PRIVATE;
+        }
+        final Size size = chooseSize(sizes, (float) jpegDimension.getWidth() / jpegDimension.getHeight(), 0,
+                jpegDimension.getWidth(), jpegDimension.getHeight(), false);
+        final int capacity = size == null ? 0 : zslRing.capacity(size, zslMemoryBytes, MAX_ZSL_FRAMES);
+        if (capacity < 1) {
+            zslReprocessFormat = 0;
+            zslRing.close();
+            return null;
+        }
+        zslSize = size;
+        zslRing.setMeasureSharpness(zslSelection == ZslFrameSelector.SHARPEST);
+        return zslRing.open(size, format, capacity, cameraHandler);
+    }
+
+    private Surface openAnalysisStream() {
+        final Size analysisSize = chooseSize(capabilities.outputSizes(ImageFormat.YUV_420_888),
+                (float) imageDimension.getWidth() / imageDimension.getHeight(), MAX_ANALYSIS_PIXELS, 640, 480, false);
+        return analysisSize == null ? null : analysisStream.open(analysisSize);
+    }
+
+    private boolean isDimensionSwapped() {
+        final int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+        return (capabilities.sensorOrientation - ORIENTATIONS.get(rotation) + 360) % 180 != 0;
+    }
+
+    private static Size chooseSize(final Size[] sizes, final float aspectRatio, final long maxPixels,
+                                   final int targetWidth, final int targetHeight, final boolean cover) {
+        final int[] widths = new int[sizes.length];
+        final int[] heights = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            widths[i] = sizes[i].getWidth();
+            heights[i] = sizes[i].getHeight();
+        }
+        final int index = SizeSelector.select(widths, heights, aspectRatio, maxPixels, targetWidth, targetHeight, cover);
+        return index < 0 ? null : sizes[index];
     }
 
     private void configureTransform(final int viewWidth, final int viewHeight) {
@@ -590,7 +2538,8 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
             return;
         }
         final int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
-        final Matrix matrix = new Matrix();
+        final Matrix matrix = previewTransform;
+        matrix.reset();
         final RectF viewRect = new RectF(0.0f, 0.0f, (float)viewWidth, (float)viewHeight);
         final RectF bufferRect = new RectF(0.0f, 0.0f, (float)imageDimension.getHeight(), (float)imageDimension.getWidth());
         final float centerX = viewRect.centerX();
@@ -613,160 +2562,584 @@ public class ProCamera extends AndroidNonvisibleComponent implements View.OnTouc
             final SurfaceTexture surfaceTexture = cameraLayout.getSurfaceTexture();
             assert surfaceTexture != null;
             surfaceTexture.setDefaultBufferSize(imageDimension.getWidth(), imageDimension.getHeight());
-            final Surface previewSurface = new Surface(surfaceTexture);
-            (captureRequestBuilder = cameraDevice.createCaptureRequest(1)).addTarget(previewSurface);
-            if (enhance) {
-                captureRequestBuilder.set(CaptureRequest.EDGE_MODE, CaptureRequest.EDGE_MODE_HIGH_QUALITY);
-                captureRequestBuilder.set(CaptureRequest.SHADING_MODE, CaptureRequest.SHADING_MODE_HIGH_QUALITY);
-                captureRequestBuilder.set(CaptureRequest.TONEMAP_MODE, CaptureRequest.TONEMAP_MODE_HIGH_QUALITY);
-                captureRequestBuilder.set(CaptureRequest.COLOR_CORRECTION_ABERRATION_MODE, CaptureRequest.COLOR_CORRECTION_ABERRATION_MODE_HIGH_QUALITY);
-                captureRequestBuilder.set(CaptureRequest.COLOR_CORRECTION_MODE, CaptureRequest.COLOR_CORRECTION_MODE_HIGH_QUALITY);
-                captureRequestBuilder.set(CaptureRequest.HOT_PIXEL_MODE, CaptureRequest.HOT_PIXEL_MODE_HIGH_QUALITY);
-                captureRequestBuilder.set(CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE, CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE_ON);
-            }
-            captureRequestBuilder.set(CaptureRequest.JPEG_QUALITY, (byte) 100);
+            if (previewSurface == null || previewTexture != surfaceTexture) {
+                if (previewSurface != null) {
+                    previewSurface.release();
+                }
+                previewTexture = surfaceTexture;
+                previewSurface = new Surface(surfaceTexture);
+            }
+            stillQueue.clear();
+            final List<Surface> outputs = new ArrayList<>(2);
+            outputs.add(previewSurface);
+            (captureRequestBuilder = captureBackend.createCaptureRequest(highSpeedRange != null ? 3 : 1)).addTarget(previewSurface);
+            faceTracker.reset();
+            final Surface encoderSurface = videoRecorder.surface(videoDimension);
+            if (encoderSurface != null) {
+                outputs.add(encoderSurface);
+            }
+            zslActive = false;
+            zslReprocessFormat = 0;
+            if (zeroShutterLag && highSpeedRange == null) {
+                final Surface zslSurface = openZslRing();
+                if (zslSurface != null) {
+                    outputs.add(zslSurface);
+                    captureRequestBuilder.addTarget(zslSurface);
+                    zslActive = true;
+                }
+            } else {
+                zslRing.close();
+            }
+            if (frameAnalysis && highSpeedRange == null) {
+                final Surface analysisSurface = openAnalysisStream();
+                if (analysisSurface != null) {
+                    outputs.add(analysisSurface);
+                    captureRequestBuilder.addTarget(analysisSurface);
+                }
+            }
+            saveProfileDefaults(captureRequestBuilder);
+            applyProfile(captureRequestBuilder, false, false);
             captureRequestBuilder.set(CaptureRequest.FLASH_MODE, (flashMode ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF));
             captureRequestBuilder.set(CaptureRequest.CONTROL_EFFECT_MODE, cameraStyle);
             captureRequestBuilder.set(CaptureRequest.NOISE_REDUCTION_MODE, noiseReductionMode);
-            captureRequestBuilder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE, faceDetectMode);
-
-            cameraDevice.createCaptureSession(Collections.singletonList(previewSurface), new CameraCaptureSession.StateCallback() {
-                public void onConfigured(@NonNull final CameraCaptureSession cameraCaptureSession) {
-                    if (null == ProCamera.this.cameraDevice) {
-                        return;
-                    }
-                    cameraCaptureSessions = cameraCaptureSession;
-                    Log.e("Camera Zoom", String.valueOf(MaxZoom()));
-                    Initialized();
-                    updatePreview();
+            captureRequestBuilder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE, activeFaceDetectMode());
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                    highSpeedRange != null ? highSpeedRange : fpsRange(targetFrameRate));
+            if (hasZoomSupport) {
+                setZoom(captureRequestBuilder, currentZoom, true);
+            }
+            restoreFocusAndMetering(captureRequestBuilder);
+
+            latencyMetrics.clearShutters();
+            sessionStartedAt = System.nanoTime();
+            final CaptureBackend.SessionListener sessionListener = new CaptureBackend.SessionListener() {
+                public void onConfigured() {
+                    latencyMetrics.recordSince(LatencyMetrics.SESSION_CONFIGURE, sessionStartedAt);
+                    sessionConfiguredAt = System.nanoTime();
+                    activity.runOnUiThread(new Runnable() {
+                        public void run() {
+                            if (null == ProCamera.this.cameraDevice) {
+                                return;
+                            }
+                            if (pendingRecording == null) {
+                                Initialized();
+                            }
+                            updatePreview();
+                            if (pendingRecording != null) {
+                                final String path = pendingRecording;
+                                pendingRecording = null;
+                                startRecorder(path);
+                            }
+                        }
+                    });
                 }
 
-                public void onConfigureFailed(@NonNull final CameraCaptureSession cameraCaptureSession) {
-                    InitializeFailed();
+                public void onConfigureFailed() {
+                    activity.runOnUiThread(new Runnable() {
+                        public void run() {
+                            if (pendingRecording != null) {
+                                pendingRecording = null;
+                                RecordingFailed("The camera does not support recording alongside the preview");
+                            }
+                            InitializeFailed();
+                        }
+                    });
                 }
-            }, null);
+            };
+            if (highSpeedRange != null) {
+                captureBackend.createHighSpeedSession(outputs, sessionListener);
+            } else if (zslReprocessFormat != 0) {
+                captureBackend.createReprocessableSession(zslReprocessFormat, zslSize, outputs, activeStillFormat,
+                        jpegDimension, JPEG_POOL_SIZE, readerListener, sessionListener);
+            } else {
+                captureBackend.createSession(outputs, activeStillFormat, jpegDimension, JPEG_POOL_SIZE, readerListener, sessionListener);
+            }
         }
         catch (CameraAccessException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Carries the focus and metering the user set over to a new request.
+     */
+    private void restoreFocusAndMetering(final CaptureRequest.Builder builder) {
+        if (meteringRegions != null) {
+            if (capabilities.maxAfRegions > 0) {
+                builder.set(CaptureRequest.CONTROL_AF_REGIONS, meteringRegions);
+            }
+            if (capabilities.maxAeRegions > 0) {
+                builder.set(CaptureRequest.CONTROL_AE_REGIONS, meteringRegions);
+            }
+        }
+        if (afModeOverride != null) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, afModeOverride);
+            if (afModeOverride == CaptureRequest.CONTROL_AF_MODE_OFF) {
+                builder.set(CaptureRequest.LENS_FOCUS_DISTANCE, manualFocusDistance);
+            }
+        }
+    }
+
+    /**
+     * Regions and focus distances are in terms of one camera, they do not carry over to another.
+     */
+    private void forgetFocusAndMetering() {
+        meteringRegions = null;
+        afModeOverride = null;
+        faceRegionsSet = false;
+        focusLockedByUser = false;
+    }
+
     protected void updatePreview() {
+        settingsBatch.sent();
         captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, 1);
         try {
-            cameraCaptureSessions.setRepeatingRequest(captureRequestBuilder.build(), null, null);
+            captureBackend.setRepeatingRequest(captureRequestBuilder.build(), previewResultListener);
         }
         catch (CameraAccessException e) {
             e.printStackTrace();
         }
     }
 
-    protected void takePicture() {
-        if (null == cameraDevice) {
+    protected void takePicture(final boolean toMemory) {
+        if (null == cameraDevice || !isSessionReady() || captureBackend.isHighSpeed() || capturePipeline.isActive()
+                || shotPending || stillQueue.isFull()) {
             return;
         }
-        final CameraManager manager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
-        try {
-            final CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraDevice.getId());
-            Size[] jpegSizes = null;
-            if (characteristics != null) {
-                jpegSizes = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP).getOutputSizes(256);
-            }
-            int width = 640;
-            int height = 480;
-            if (jpegSizes != null && 0 < jpegSizes.length) {
-                width = jpegSizes[0].getWidth();
-                height = jpegSizes[0].getHeight();
-            }
-            final ImageReader reader = ImageReader.newInstance(width, height, 256, 1);
-            final List<Surface> outputSurfaces = new ArrayList<>(2);
-            outputSurfaces.add(reader.getSurface());
-            outputSurfaces.add(new Surface(cameraLayout.getSurfaceTexture()));
-            final CaptureRequest.Builder captureBuilder = cameraDevice.createCaptureRequest(2);
-            captureBuilder.addTarget(reader.getSurface());
-            if (enhance) {
-                captureBuilder.set(CaptureRequest.EDGE_MODE, CaptureRequest.EDGE_MODE_HIGH_QUALITY);
-                captureBuilder.set(CaptureRequest.SHADING_MODE, CaptureRequest.SHADING_MODE_HIGH_QUALITY);
-                captureBuilder.set(CaptureRequest.TONEMAP_MODE, CaptureRequest.TONEMAP_MODE_HIGH_QUALITY);
-                captureBuilder.set(CaptureRequest.COLOR_CORRECTION_ABERRATION_MODE, CaptureRequest.COLOR_CORRECTION_ABERRATION_MODE_HIGH_QUALITY);
-                captureBuilder.set(CaptureRequest.COLOR_CORRECTION_MODE, CaptureRequest.COLOR_CORRECTION_MODE_HIGH_QUALITY);
-                captureBuilder.set(CaptureRequest.HOT_PIXEL_MODE, CaptureRequest.HOT_PIXEL_MODE_HIGH_QUALITY);
-                captureBuilder.set(CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE, CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE_ON);
-            }
-            captureBuilder.set(CaptureRequest.JPEG_QUALITY, (byte) 100);
-            captureBuilder.set(CaptureRequest.FLASH_MODE, (flashMode ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF));
-            captureBuilder.set(CaptureRequest.CONTROL_EFFECT_MODE, cameraStyle);
-            captureBuilder.set(CaptureRequest.NOISE_REDUCTION_MODE, noiseReductionMode);
-            captureBuilder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE, faceDetectMode);
-
-            setZoom(captureBuilder, currentZoom, true);
-            final ImageReader.OnImageAvailableListener readerListener = new ImageReader.OnImageAvailableListener() {
-                public void onImageAvailable(final ImageReader reader) {
-                    Image image = null;
-                    try {
-                        image = reader.acquireLatestImage();
-                        final ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-                        final byte[] bytes = new byte[buffer.capacity()];
-                        buffer.get(bytes);
-                        writeBytes(bytes);
-                    } finally {
-                        if (image != null) {
-                            image.close();
-                        }
+        shotToMemory = toMemory;
+        shutterPressedAt = System.nanoTime();
+        if (zslActive && takeZslPicture(toMemory)) {
+            return;
+        }
+        if (convergeBeforeCapture && capabilities != null) {
+            shotPending = true;
+            runFocusSequence(hasAutoFocus(), SHOT_CONVERGENCE_TIMEOUT_MS);
+        } else {
+            captureStill();
+        }
+    }
+
+    /**
+     * Makes the picture from a kept frame. With a reprocessable session the frame goes back
+     * through the camera to the still reader, so it ends up like any other picture; otherwise a
+     * YUV frame is encoded on the writer thread.
+     *
+     * @return false if no frame was kept, the picture is then captured as usual
+     */
+    private boolean takeZslPicture(final boolean toMemory) {
+        // sensor timestamps of an unknown source are in practice on the monotonic clock
+        final long target = capabilities.realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : shutterPressedAt;
+        final Image frame = zslRing.take(zslSelection, target, ZSL_SHARPEST_WINDOW);
+        if (frame == null) {
+            return false;
+        }
+        stillOrientation = captureOrientation();
+        final TotalCaptureResult result = zslRing.result(frame.getTimestamp());
+        if (captureBackend.isReprocessable() && result != null) {
+            try {
+                final CaptureRequest.Builder builder = captureBackend.createReprocessRequest(result);
+                builder.addTarget(captureBackend.getJpegSurface());
+                builder.set(CaptureRequest.JPEG_ORIENTATION, isExifOrientationOnly() ? 0 : stillOrientation);
+                builder.set(CaptureRequest.JPEG_QUALITY, (byte) jpegQuality);
+                stillQueue.reprocess(captureBackend, frame, builder.build(), captureListener, toMemory);
+                latencyMetrics.shutterPressed(shutterPressedAt);
+                shutterPressedAt = 0;
+            }
+            catch (CameraAccessException | IllegalStateException e) {
+                frame.close();
+                e.printStackTrace();
+            }
+            return true;
+        }
+        if (frame.getFormat() != ImageFormat.YUV_420_888) {
+            frame.close();
+            return false;
+        }
+        encodeZslFrame(frame, toMemory);
+        return true;
+    }
+
+    /**
+     * Encodes a kept YUV frame to JPEG on the writer thread. The frame is not rotated, saved and
+     * memory pictures carry the rotation in their EXIF orientation.
+     */
+    private void encodeZslFrame(final Image frame, final boolean toMemory) {
+        final OutputManager manager = outputManager;
+        final String path = toMemory ? null : manager == null ? Output() : nextOutputPath(manager, "jpg");
+        if (!toMemory && path == null) {
+            frame.close();
+            return;
+        }
+        final int quality = jpegQuality;
+        final int rotation = stillOrientation;
+        final boolean syncWrite = syncOutput;
+        final boolean preallocate = preallocateOutput;
+        stillQueue.encoding();
+        final boolean submitted = photoWriter.submit(new PhotoWriter.Job() {
+            public void write() throws IOException {
+                try {
+                    final int width = frame.getWidth();
+                    final int height = frame.getHeight();
+                    if (zslNv21 == null || zslNv21.length < width * height * 3 / 2) {
+                        zslNv21 = new byte[width * height * 3 / 2];
+                        zslJpeg = new ZslRing.JpegStream(width * height / 4);
                     }
+                    ZslRing.toNv21(frame, zslNv21);
+                    zslJpeg.reset();
+                    new YuvImage(zslNv21, ImageFormat.NV21, width, height, null)
+                            .compressToJpeg(new Rect(0, 0, width, height), quality, zslJpeg);
+                } catch (IllegalStateException e) {
+                    // the reader was closed by a pause before the frame was encoded
+                    throw new IOException(e);
+                } finally {
+                    frame.close();
                 }
-            };
-            reader.setOnImageAvailableListener(readerListener,null);
-            cameraDevice.createCaptureSession(outputSurfaces, new CameraCaptureSession.StateCallback() {
-                public void onConfigured(final CameraCaptureSession session) {
-                    try {
-                        session.capture(captureBuilder.build(), captureListener, null);
-                    }
-                    catch (CameraAccessException e) {
-                        e.printStackTrace();
-                    }
+                final ByteBuffer bytes = zslJpeg.contents();
+                final ByteBuffer[] parts = rotation == 0 ? new ByteBuffer[]{bytes}
+                        : ExifOrientation.split(bytes, rotation);
+                if (toMemory) {
+                    storeInMemory(parts, 0);
+                    return;
                 }
-
-                public void onConfigureFailed(final CameraCaptureSession session) {
-                    createCameraPreview();
-                    TakePreviewPicture();
+                final String target = manager == null ? path : OutputManager.temporary(path);
+                ChannelWriter.write(parts, target, preallocate, syncWrite);
+                if (manager != null) {
+                    manager.commit(path);
+                }
+            }
+        }, new PhotoWriter.Callback() {
+            public void onWritten(final boolean success) {
+                stillQueue.done();
+                if (success && !toMemory) {
+                    SavedPhoto();
+                    PictureSaved(path);
                 }
-            }, null);
+            }
+        });
+        if (!submitted) {
+            frame.close();
+        }
+    }
+
+    private void captureStill() {
+        if (!isSessionReady()) {
+            return;
+        }
+        try {
+            final CaptureRequest.Builder captureBuilder = buildStillRequest(false);
+            stillQueue.capture(captureBackend, captureBuilder.build(), captureListener, shotToMemory);
+            latencyMetrics.shutterPressed(shutterPressedAt != 0 ? shutterPressedAt : System.nanoTime());
+            shutterPressedAt = 0;
+            if (convergeBeforeCapture && !focusLockedByUser && hasAutoFocus()) {
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+                captureBackend.capture(captureRequestBuilder.build(), null);
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+            }
+        }
+        catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean hasAutoFocus() {
+        final Integer afMode = captureRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE);
+        return afMode != null && afMode != CaptureRequest.CONTROL_AF_MODE_OFF
+                && afMode != CaptureRequest.CONTROL_AF_MODE_EDOF;
+    }
+
+    /**
+     * While recording, stills are video snapshots that also feed the preview and the encoder, so
+     * the recording does not skip the frame.
+     */
+    private CaptureRequest.Builder buildStillRequest(final boolean withPreview) throws CameraAccessException {
+        final boolean recording = videoRecorder.isRecording();
+        final CaptureRequest.Builder captureBuilder = captureBackend.createCaptureRequest(recording ? 4 : 2);
+        captureBuilder.addTarget(captureBackend.getJpegSurface());
+        if (withPreview || recording) {
+            captureBuilder.addTarget(previewSurface);
+        }
+        if (recording) {
+            captureBuilder.addTarget(videoRecorder.surface());
+        }
+        applyProfile(captureBuilder, true, false);
+        stillOrientation = captureOrientation();
+        captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, isExifOrientationOnly() ? 0 : stillOrientation);
+        captureBuilder.set(CaptureRequest.JPEG_QUALITY, (byte) jpegQuality);
+        captureBuilder.set(CaptureRequest.FLASH_MODE, (flashMode ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF));
+        captureBuilder.set(CaptureRequest.CONTROL_EFFECT_MODE, cameraStyle);
+        captureBuilder.set(CaptureRequest.NOISE_REDUCTION_MODE, noiseReductionMode);
+        captureBuilder.set(CaptureRequest.STATISTICS_FACE_DETECT_MODE, activeFaceDetectMode());
+        copyMetering(captureBuilder);
+
+        setZoom(captureBuilder, currentZoom, true);
+        return captureBuilder;
+    }
+
+    /**
+     * Carries the AF mode and metering regions of the preview over to a still request, so a
+     * still does not restart a focus the preview has locked.
+     */
+    private void copyMetering(final CaptureRequest.Builder captureBuilder) {
+        final Integer afMode = captureRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE);
+        if (afMode != null) {
+            captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+        }
+        final MeteringRectangle[] afRegions = captureRequestBuilder.get(CaptureRequest.CONTROL_AF_REGIONS);
+        if (afRegions != null) {
+            captureBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, afRegions);
+        }
+        final MeteringRectangle[] aeRegions = captureRequestBuilder.get(CaptureRequest.CONTROL_AE_REGIONS);
+        if (aeRegions != null) {
+            captureBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, aeRegions);
+        }
+    }
+
+    private void startSequence(final int count, final int intervalMs) {
+        if (null == cameraDevice || !isSessionReady() || captureBackend.isHighSpeed() || capturePipeline.isActive()
+                || stillQueue.isBusy()) {
+            return;
+        }
+        try {
+            final CaptureRequest request = buildStillRequest(true).build();
+            // frames are paced here, so the pipeline admits every frame that arrives
+            capturePipeline.start(count);
+            if (count == 0 || intervalMs > 0) {
+                burstPacer.start(request, count, intervalMs);
+                pacedCapture.run();
+            } else {
+                burstPacer.startBurst(count);
+                captureBackend.captureBurst(Collections.nCopies(count, request), burstListener);
+            }
         }
         catch (CameraAccessException e) {
+            stopPacedCaptures();
+            capturePipeline.stop();
             e.printStackTrace();
         }
     }
 
-    private void writeBytes(final byte[] data) {
-        try (FileOutputStream stream = new FileOutputStream(imageDestination)) {
-            stream.write(data);
-            SavedPhoto();
-        } catch (IOException e) {
+    /**
+     * Issues paced captures, once per interval or, without one, as many as fit in flight.
+     */
+    private final Runnable pacedCapture = new Runnable() {
+        public void run() {
+            if (!burstPacer.isRunning() || !isSessionReady()) {
+                return;
+            }
+            if (burstPacer.intervalMs() > 0) {
+                // a tick that finds the writer behind keeps the schedule, its frame is dropped
+                if (!burstPacer.issue(captureBackend, burstListener) && burstPacer.skip() && capturePipeline.fail()) {
+                    stopPacedCaptures();
+                    BurstCompleted(capturePipeline.saved(), capturePipeline.dropped());
+                    return;
+                }
+                if (burstPacer.hasMore()) {
+                    mainHandler.removeCallbacks(this);
+                    mainHandler.postDelayed(this, burstPacer.intervalMs());
+                }
+            } else {
+                while (burstPacer.issue(captureBackend, burstListener)) {
+                    // fill the pipeline
+                }
+            }
+        }
+    };
+
+    private void stopPacedCaptures() {
+        burstPacer.stop();
+        mainHandler.removeCallbacks(pacedCapture);
+    }
+
+    private void writeBurstFrame(final Image image) {
+        final int index = capturePipeline.offer();
+        if (index < 0) {
+            image.close();
+            burstFrameDone();
+        }
+        if (index == CapturePipeline.SKIPPED) {
+            return;
+        }
+        if (capturePipeline.isFilled()) {
+            activity.runOnUiThread(new Runnable() {
+                public void run() {
+                    stopPacedCaptures();
+                }
+            });
+        }
+        if (index == CapturePipeline.DROPPED) {
+            return;
+        }
+        final OutputManager manager = outputManager;
+        final String path = manager == null ? framePath(index + 1) : nextOutputPath(manager, stillExtension());
+        if (path == null) {
+            image.close();
+            burstFrameDone();
+            if (capturePipeline.complete(false)) {
+                activity.runOnUiThread(new Runnable() {
+                    public void run() {
+                        BurstCompleted(capturePipeline.saved(), capturePipeline.dropped());
+                    }
+                });
+            }
+            return;
+        }
+        writeImage(path, manager, image, new PhotoWriter.Callback() {
+            public void onWritten(final boolean success) {
+                burstFrameDone();
+                if (success) {
+                    BurstFrameSaved(index + 1, path);
+                }
+                if (capturePipeline.complete(success)) {
+                    BurstCompleted(capturePipeline.saved(), capturePipeline.dropped());
+                }
+            }
+        });
+    }
+
+    private void writeStill(final Image image) {
+        final OutputManager manager = outputManager;
+        final String path = manager == null ? Output() : nextOutputPath(manager, stillExtension());
+        if (path == null) {
+            image.close();
+            stillQueue.done();
+            return;
+        }
+        writeImage(path, manager, image, new PhotoWriter.Callback() {
+            public void onWritten(final boolean success) {
+                stillQueue.done();
+                if (success) {
+                    SavedPhoto();
+                    PictureSaved(path);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the next managed path, or null if its folder could not be created
+     */
+    private static String nextOutputPath(final OutputManager manager, final String extension) {
+        try {
+            return manager.next(extension);
+        }
+        catch (IOException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+
+    private String stillExtension() {
+        return activeStillFormat == ImageFormat.HEIC ? "heic" : "jpg";
+    }
+
+    /**
+     * Writes the encoded plane of the image and closes it, the image is owned by the writer from
+     * here on and its buffer goes back to the reader only once it is on disk.
+     *
+     * @param manager the manager the path came from, the file is then written under a temporary
+     *                name and committed, or null to write the path directly
+     */
+    private void writeImage(final String path, final OutputManager manager, final Image image,
+                            final PhotoWriter.Callback callback) {
+        final boolean syncWrite = syncOutput;
+        final boolean preallocate = preallocateOutput;
+        final int exifRotation = isExifOrientationOnly() ? stillOrientation : 0;
+        final long queuedAt = System.nanoTime();
+        final boolean submitted = photoWriter.submit(new PhotoWriter.Job() {
+            public void write() throws IOException {
+                final String target = manager == null ? path : OutputManager.temporary(path);
+                try {
+                    final ByteBuffer jpeg = image.getPlanes()[0].getBuffer();
+                    ChannelWriter.write(exifRotation == 0 ? new ByteBuffer[]{jpeg}
+                            : ExifOrientation.split(jpeg, exifRotation), target, preallocate, syncWrite);
+                    if (manager != null) {
+                        manager.commit(path);
+                    }
+                    latencyMetrics.recordSince(LatencyMetrics.IMAGE_TO_DISK, queuedAt);
+                } catch (IllegalStateException e) {
+                    // the reader was closed by a pause before the image was written
+                    throw new IOException(e);
+                } finally {
+                    image.close();
+                }
+            }
+        }, callback);
+        if (!submitted) {
+            image.close();
+        }
+    }
+
+    private String framePath(final int frame) {
+        final String destination = Output();
+        final int dot = destination.lastIndexOf('.');
+        if (dot <= destination.lastIndexOf('/')) {
+            return destination + "_" + frame;
+        }
+        return destination.substring(0, dot) + "_" + frame + destination.substring(dot);
+    }
+
+    private void startCameraThread() {
+        if (cameraThread != null) {
+            return;
+        }
+        cameraThread = new HandlerThread("ProCamera");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
+    }
+
+    private void stopCameraThread() {
+        if (cameraThread == null) {
+            return;
+        }
+        cameraThread.quitSafely();
+        cameraThread = null;
+        cameraHandler = null;
+    }
+
+    private boolean isSessionReady() {
+        return captureBackend != null && captureBackend.isConfigured();
+    }
+
+    private void closeBackend() {
+        finishRecording(false);
+        pendingRecording = null;
+        zslRing.clear();
+        zslActive = false;
+        if (captureBackend != null) {
+            captureBackend.close();
+            captureBackend = null;
         }
     }
 
     @Override
     public boolean onTouch(View view, MotionEvent event) {
-        if (event.getPointerCount() > 1 && gestureZoom) {
+        final int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            multiTouch = false;
+        } else if (event.getPointerCount() > 1) {
+            multiTouch = true;
+        }
+        if (event.getPointerCount() > 1 && gestureZoom && hasZoomSupport) {
             float x = event.getX(0) - event.getX(1);
             float y = event.getY(0) - event.getY(1);
-
-            float current_finger_spacing = (float) Math.sqrt(x * x + y * y);
-            if(finger_spacing != 0){
-                if(current_finger_spacing > finger_spacing && maxZoom > currentZoom){
-                    currentZoom = (float) (currentZoom + .1);
-                    ZoomByPinch(true);
-                } else if (current_finger_spacing < finger_spacing && currentZoom > 1){
-                    currentZoom = (float) (currentZoom - .1);
-                    ZoomByPinch(false);
-                }
-                 setZoom(captureRequestBuilder, currentZoom, false);
+            float spacing = (float) Math.sqrt(x * x + y * y);
+
+            if (action == MotionEvent.ACTION_POINTER_UP) {
+                endZoomGesture();
+            } else if (!zoomGesture.isActive() || action == MotionEvent.ACTION_POINTER_DOWN) {
+                zoomGesture.setMaxZoom(maxZoom);
+                zoomGesture.begin(spacing, currentZoom);
+            } else if (zoomGesture.move(spacing)) {
+                Choreographer.getInstance().postFrameCallback(zoomFrameCallback);
             }
-            finger_spacing = current_finger_spacing;
-        } else{
-            if (event.getAction() == MotionEvent.ACTION_UP) {
+        } else {
+            if (zoomGesture.isActive()) {
+                endZoomGesture();
+            }
+            if (action == MotionEvent.ACTION_UP) {
+                if (tapToFocus && !multiTouch) {
+                    FocusAt(event.getX(), event.getY());
+                }
                 Touched();
             }
         }
@@ -0,0 +1,75 @@
+package com.kumaraswamy.camerax;
+
+import java.util.Arrays;
+
+/**
+ * Coalesces changes to the repeating preview request. Changes made while a batch is open, or
+ * within one pass of the UI thread, are sent together with a single repeating request, and
+ * nothing is sent when no value actually changed.
+ */
+final class SettingsBatch {
+    private int depth;
+    private boolean dirty;
+    private boolean scheduled;
+
+    void begin() {
+        depth++;
+    }
+
+    /**
+     * Closes one level of {@link #begin}.
+     *
+     * @return true if the outermost batch closed and has changes to send
+     */
+    boolean end() {
+        if (depth > 0) {
+            depth--;
+        }
+        return depth == 0 && dirty;
+    }
+
+    boolean isOpen() {
+        return depth > 0;
+    }
+
+    /**
+     * Records that the request changed.
+     *
+     * @return true if a flush has to be posted, false when one is already pending or a batch
+     * is open and will send the change when it is committed
+     */
+    boolean markDirty() {
+        dirty = true;
+        if (depth > 0 || scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * @return true if the changes have to be sent now, they are then considered sent
+     */
+    boolean takeFlush() {
+        scheduled = false;
+        if (depth > 0 || !dirty) {
+            return false;
+        }
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * The full request was sent some other way, so pending changes went with it.
+     */
+    void sent() {
+        dirty = false;
+    }
+
+    /**
+     * Compares request values, including array values such as metering regions.
+     */
+    static boolean sameValue(final Object current, final Object value) {
+        return Arrays.deepEquals(new Object[]{current}, new Object[]{value});
+    }
+}
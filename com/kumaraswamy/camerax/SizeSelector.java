@@ -0,0 +1,90 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Picks an output size by scoring every candidate against a target aspect ratio, a pixel
+ * budget and a target resolution. Sizes are passed as plain width and height arrays, so the
+ * selection has no Android dependencies.
+ */
+final class SizeSelector {
+    private static final double ASPECT_WEIGHT = 8.0;
+    private static final double UNDERSIZE_WEIGHT = 4.0;
+
+    private SizeSelector() {
+    }
+
+    /**
+     * @param aspectRatio  wanted width / height, or 0 for any
+     * @param maxPixels    candidates above this are only used when nothing fits, 0 for no limit
+     * @param targetWidth  resolution to aim for, 0 to aim for the largest size within budget
+     * @param targetHeight resolution to aim for, 0 to aim for the largest size within budget
+     * @param cover        the size should be at least the target in both dimensions, like a
+     *                     preview that should not be upscaled to fill its view
+     * @return index of the best candidate, or -1 if there are none
+     */
+    static int select(final int[] widths, final int[] heights, final float aspectRatio, final long maxPixels,
+                      int targetWidth, int targetHeight, final boolean cover) {
+        final int count = Math.min(widths.length, heights.length);
+        if (count == 0) {
+            return -1;
+        }
+        int smallest = 0;
+        int largestInBudget = -1;
+        for (int i = 0; i < count; i++) {
+            final long pixels = pixels(widths[i], heights[i]);
+            if (pixels < pixels(widths[smallest], heights[smallest])) {
+                smallest = i;
+            }
+            if (withinBudget(pixels, maxPixels)
+                    && (largestInBudget < 0 || pixels > pixels(widths[largestInBudget], heights[largestInBudget]))) {
+                largestInBudget = i;
+            }
+        }
+        if (largestInBudget < 0) {
+            return smallest;
+        }
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            targetWidth = widths[largestInBudget];
+            targetHeight = heights[largestInBudget];
+        }
+
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (widths[i] <= 0 || heights[i] <= 0 || !withinBudget(pixels(widths[i], heights[i]), maxPixels)) {
+                continue;
+            }
+            final double score = score(widths[i], heights[i], aspectRatio, targetWidth, targetHeight, cover);
+            if (score < bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    static double score(final int width, final int height, final float aspectRatio,
+                        final int targetWidth, final int targetHeight, final boolean cover) {
+        double score = 0;
+        if (aspectRatio > 0) {
+            score += ASPECT_WEIGHT * Math.abs(Math.log((double) width / height / aspectRatio));
+        }
+        final double ratio = (double) pixels(width, height) / pixels(targetWidth, targetHeight);
+        if (!cover) {
+            score += Math.abs(Math.log(ratio));
+        } else if (width >= targetWidth && height >= targetHeight) {
+            score += Math.log(ratio);
+        } else {
+            final double coverage = Math.min((double) width / targetWidth, (double) height / targetHeight);
+            score += UNDERSIZE_WEIGHT * -Math.log(coverage) + Math.abs(Math.log(ratio));
+        }
+        return score;
+    }
+
+    private static boolean withinBudget(final long pixels, final long maxPixels) {
+        return maxPixels <= 0 || pixels <= maxPixels;
+    }
+
+    private static long pixels(final int width, final int height) {
+        return (long) width * height;
+    }
+}
@@ -0,0 +1,128 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureRequest;
+import android.media.Image;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stills from the moment they are sent to the camera until their picture is written or kept in
+ * memory. A still is captured through the session that is already configured and arrives in
+ * the backend's still reader, so taking one never makes a session or a reader; pictures arrive
+ * in capture order and are matched to where they go in that order. Stills are sent from one
+ * thread; they may arrive and be finished on any.
+ */
+final class StillQueue {
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ArrayDeque<Boolean> destinations = new ArrayDeque<>();
+
+    StillQueue(final int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return true while any still is between capture and disk
+     */
+    boolean isBusy() {
+        return inFlight.get() > 0;
+    }
+
+    boolean isFull() {
+        return inFlight.get() >= maxInFlight;
+    }
+
+    /**
+     * Forgets every still, for a new session whose reader has none of them.
+     */
+    void clear() {
+        pending.set(0);
+        synchronized (destinations) {
+            destinations.clear();
+        }
+        inFlight.set(0);
+    }
+
+    /**
+     * Captures a still that targets the still surface.
+     *
+     * @param toMemory keep the picture in memory instead of writing it
+     */
+    void capture(final CaptureBackend backend, final CaptureRequest request,
+                 final CameraCaptureSession.CaptureCallback callback, final boolean toMemory) throws CameraAccessException {
+        sent(toMemory);
+        try {
+            backend.capture(request, callback);
+        }
+        catch (CameraAccessException | RuntimeException e) {
+            unsent();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a kept frame back through the camera to the still surface.
+     */
+    void reprocess(final CaptureBackend backend, final Image input, final CaptureRequest request,
+                   final CameraCaptureSession.CaptureCallback callback, final boolean toMemory) throws CameraAccessException {
+        sent(toMemory);
+        try {
+            backend.reprocess(input, request, callback);
+        }
+        catch (CameraAccessException | RuntimeException e) {
+            unsent();
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a still that is made without the camera, it is finished with {@link #done()}.
+     */
+    void encoding() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * An image arrived in the still reader.
+     *
+     * @return whether the picture goes to memory, or null if no still was waiting for it and the
+     * image has to be dropped
+     */
+    Boolean arrived() {
+        if (pending.getAndDecrement() <= 0) {
+            pending.incrementAndGet();
+            return null;
+        }
+        synchronized (destinations) {
+            final Boolean toMemory = destinations.pollFirst();
+            return toMemory != null && toMemory;
+        }
+    }
+
+    /**
+     * The picture of a still was written, kept or given up.
+     */
+    void done() {
+        inFlight.decrementAndGet();
+    }
+
+    private void sent(final boolean toMemory) {
+        inFlight.incrementAndGet();
+        synchronized (destinations) {
+            destinations.addLast(toMemory);
+        }
+        pending.incrementAndGet();
+    }
+
+    private void unsent() {
+        inFlight.decrementAndGet();
+        pending.decrementAndGet();
+        synchronized (destinations) {
+            destinations.pollLast();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.kumaraswamy.camerax;
+
+import android.media.MediaCodec;
+import android.media.MediaRecorder;
+import android.util.Size;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records the camera into a {@link MediaRecorder} through a persistent encoder input surface.
+ * The surface outlives the recorders, so it is added to the capture session once and every
+ * later recording reuses that session instead of reconfiguring it.
+ */
+final class VideoRecorder {
+    private Surface surface;
+    private Size surfaceSize;
+
+    private MediaRecorder recorder;
+    private String path;
+    private long startedAt;
+    private volatile long frames;
+
+    Surface surface() {
+        return surface;
+    }
+
+    /**
+     * The encoder surface if it was prepared for the given size, else null.
+     */
+    Surface surface(final Size size) {
+        return surface != null && size != null && size.equals(surfaceSize) ? surface : null;
+    }
+
+    /**
+     * Creates the persistent surface for a size. A throwaway recorder is prepared on it once,
+     * which fixes its buffer size before the camera session sees it.
+     *
+     * @param scratch file the throwaway recorder writes to, it is deleted again
+     */
+    Surface prepareSurface(final Size size, final int frameRate, final int bitRate, final File scratch) throws IOException {
+        final Surface prepared = surface(size);
+        if (prepared != null) {
+            return prepared;
+        }
+        releaseSurface();
+        final Surface persistent = MediaCodec.createPersistentInputSurface();
+        final MediaRecorder primer = configure(persistent, scratch.getAbsolutePath(), size, frameRate, bitRate, 0);
+        try {
+            primer.prepare();
+        } catch (IOException e) {
+            persistent.release();
+            throw e;
+        } finally {
+            primer.release();
+            scratch.delete();
+        }
+        surface = persistent;
+        surfaceSize = size;
+        return persistent;
+    }
+
+    /**
+     * Starts recording into the prepared surface, the camera has to target the surface after.
+     */
+    void start(final String path, final int frameRate, final int bitRate, final int orientationHint) throws IOException {
+        final MediaRecorder started = configure(surface, path, surfaceSize, frameRate, bitRate, orientationHint);
+        try {
+            started.prepare();
+            started.start();
+        } catch (IOException | RuntimeException e) {
+            started.release();
+            throw e;
+        }
+        recorder = started;
+        this.path = path;
+        startedAt = System.nanoTime();
+        frames = 0;
+    }
+
+    boolean isRecording() {
+        return recorder != null;
+    }
+
+    /**
+     * Counts a frame sent to the encoder, called from the camera thread.
+     */
+    void onFrame() {
+        frames++;
+    }
+
+    long frames() {
+        return frames;
+    }
+
+    long durationMillis() {
+        return recorder == null ? 0 : (System.nanoTime() - startedAt) / 1_000_000L;
+    }
+
+    String path() {
+        return path;
+    }
+
+    /**
+     * Stops the recording, the surface stays for the next one.
+     *
+     * @return false if the recording failed, for example because no frame reached the encoder
+     */
+    boolean stop() {
+        if (recorder == null) {
+            return false;
+        }
+        boolean success = true;
+        try {
+            recorder.stop();
+        } catch (RuntimeException e) {
+            success = false;
+            new File(path).delete();
+        } finally {
+            recorder.release();
+            recorder = null;
+        }
+        return success;
+    }
+
+    void release() {
+        stop();
+        releaseSurface();
+    }
+
+    private void releaseSurface() {
+        if (surface != null) {
+            surface.release();
+            surface = null;
+            surfaceSize = null;
+        }
+    }
+
+    private static MediaRecorder configure(final Surface input, final String path, final Size size,
+                                           final int frameRate, final int bitRate, final int orientationHint) {
+        final MediaRecorder recorder = new MediaRecorder();
+        recorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
+        recorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+        recorder.setOutputFile(path);
+        recorder.setVideoEncodingBitRate(bitRate);
+        recorder.setVideoFrameRate(frameRate);
+        recorder.setVideoSize(size.getWidth(), size.getHeight());
+        recorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+        recorder.setOrientationHint(orientationHint);
+        recorder.setInputSurface(input);
+        return recorder;
+    }
+}
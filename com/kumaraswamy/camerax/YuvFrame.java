@@ -0,0 +1,92 @@
+package com.kumaraswamy.camerax;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A YUV_420_888 frame as plain buffers and strides. The analysis stream reuses one instance for
+ * every frame, so analyzers must not keep a reference after they return. Analyzers can be fed
+ * synthetic frames by calling {@link #set} themselves.
+ */
+public final class YuvFrame {
+    private int width;
+    private int height;
+    private long timestamp;
+
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    public void set(final int width, final int height, final long timestamp,
+                    final ByteBuffer yPlane, final int yRowStride,
+                    final ByteBuffer uPlane, final ByteBuffer vPlane,
+                    final int uvRowStride, final int uvPixelStride) {
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        this.yPlane = yPlane;
+        this.yRowStride = yRowStride;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+    }
+
+    void rewind() {
+        yPlane.rewind();
+        uPlane.rewind();
+        vPlane.rewind();
+    }
+
+    void clear() {
+        yPlane = uPlane = vPlane = null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Sensor timestamp of the frame in nanoseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public ByteBuffer getYPlane() {
+        return yPlane;
+    }
+
+    public ByteBuffer getUPlane() {
+        return uPlane;
+    }
+
+    public ByteBuffer getVPlane() {
+        return vPlane;
+    }
+
+    public int getYRowStride() {
+        return yRowStride;
+    }
+
+    public int getUvRowStride() {
+        return uvRowStride;
+    }
+
+    public int getUvPixelStride() {
+        return uvPixelStride;
+    }
+
+    /**
+     * Luma of the pixel at the given position, 0 to 255.
+     */
+    public int luma(final int x, final int y) {
+        return yPlane.get(y * yRowStride + x) & 0xFF;
+    }
+}
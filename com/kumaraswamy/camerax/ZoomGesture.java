@@ -0,0 +1,104 @@
+package com.kumaraswamy.camerax;
+
+/**
+ * Pinch-to-zoom state. The zoom level follows the ratio of the finger spacing to the spacing
+ * at the start of the gesture, moves are coalesced so one level is applied per display frame,
+ * and change notifications are throttled.
+ */
+final class ZoomGesture {
+    static final int NO_CHANGE = 0;
+    static final int INCREASED = 1;
+    static final int DECREASED = -1;
+
+    private static final long NOTIFY_INTERVAL_NANOS = 100_000_000L;
+
+    private float maxZoom = 1.0f;
+
+    private boolean active;
+    private boolean frameScheduled;
+    private float startSpacing;
+    private float startZoom;
+    private float targetZoom;
+    private float appliedZoom;
+    private float notifiedZoom;
+    private long notifiedAt;
+
+    void setMaxZoom(final float maxZoom) {
+        this.maxZoom = Math.max(1.0f, maxZoom);
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    void begin(final float spacing, final float zoom) {
+        active = spacing > 0;
+        startSpacing = spacing;
+        startZoom = targetZoom = appliedZoom = notifiedZoom = clamp(zoom);
+        notifiedAt = 0;
+    }
+
+    /**
+     * @return true if a frame callback has to be scheduled to apply the new level
+     */
+    boolean move(final float spacing) {
+        if (!active || spacing <= 0) {
+            return false;
+        }
+        targetZoom = clamp(startZoom * spacing / startSpacing);
+        if (frameScheduled || targetZoom == appliedZoom) {
+            return false;
+        }
+        frameScheduled = true;
+        return true;
+    }
+
+    /**
+     * Called once per display frame after {@link #move} asked for it.
+     *
+     * @return the level to apply, or a negative value when it did not change
+     */
+    float onFrame() {
+        frameScheduled = false;
+        if (targetZoom == appliedZoom) {
+            return -1;
+        }
+        appliedZoom = targetZoom;
+        return appliedZoom;
+    }
+
+    /**
+     * Ends the gesture; a frame that is still scheduled applies the last level.
+     */
+    void end() {
+        active = false;
+    }
+
+    boolean isFrameScheduled() {
+        return frameScheduled;
+    }
+
+    /**
+     * Decides whether the applied level should be reported now. Reports are at least
+     * {@link #NOTIFY_INTERVAL_NANOS} apart during the gesture; once it ended the last level is
+     * always reported.
+     *
+     * @return {@link #INCREASED} or {@link #DECREASED} if a report is due, else {@link #NO_CHANGE}
+     */
+    int notification(final long nowNanos) {
+        if (appliedZoom == notifiedZoom) {
+            return NO_CHANGE;
+        }
+        if (active && notifiedAt != 0 && nowNanos - notifiedAt < NOTIFY_INTERVAL_NANOS) {
+            return NO_CHANGE;
+        }
+        final int direction = appliedZoom > notifiedZoom ? INCREASED : DECREASED;
+        notifiedZoom = appliedZoom;
+        notifiedAt = nowNanos;
+        return direction;
+    }
+
+    private float clamp(final float zoom) {
+        return Math.max(1.0f, Math.min(zoom, maxZoom));
+    }
+}
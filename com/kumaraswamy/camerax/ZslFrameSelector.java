@@ -0,0 +1,76 @@
+package com.kumaraswamy.camerax;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Picks the frame of the zero shutter lag ring a picture is made from. Slots are given as
+ * parallel arrays, an empty slot has a negative timestamp.
+ */
+final class ZslFrameSelector {
+    static final int CLOSEST = 0;
+    static final int SHARPEST = 1;
+
+    private ZslFrameSelector() {
+    }
+
+    /**
+     * The frame whose sensor timestamp is closest to {@code target}.
+     *
+     * @return the slot, or -1 if the ring is empty
+     */
+    static int closest(final long[] timestamps, final long target) {
+        int best = -1;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (timestamps[i] >= 0 && (best < 0
+                    || Math.abs(timestamps[i] - target) < Math.abs(timestamps[best] - target))) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The sharpest of the {@code window} newest frames, the newer one on a tie.
+     *
+     * @return the slot, or -1 if the ring is empty
+     */
+    static int sharpest(final long[] timestamps, final float[] sharpness, final int window) {
+        int best = -1;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (timestamps[i] < 0) {
+                continue;
+            }
+            int newer = 0;
+            for (int j = 0; j < timestamps.length; j++) {
+                if (timestamps[j] > timestamps[i]) {
+                    newer++;
+                }
+            }
+            if (newer < window && (best < 0 || sharpness[i] > sharpness[best]
+                    || sharpness[i] == sharpness[best] && timestamps[i] > timestamps[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Mean absolute luma difference to the right and lower neighbour, sampled every {@code step}
+     * pixels. Higher is sharper; only comparable between frames of the same scene and size.
+     */
+    static float sharpness(final ByteBuffer luma, final int rowStride, final int width, final int height,
+                           final int step) {
+        long sum = 0;
+        int samples = 0;
+        for (int y = 0; y + 1 < height; y += step) {
+            final int row = y * rowStride;
+            for (int x = 0; x + 1 < width; x += step) {
+                final int center = luma.get(row + x) & 0xff;
+                sum += Math.abs(center - (luma.get(row + x + 1) & 0xff))
+                        + Math.abs(center - (luma.get(row + rowStride + x) & 0xff));
+                samples++;
+            }
+        }
+        return samples == 0 ? 0 : (float) sum / samples;
+    }
+}
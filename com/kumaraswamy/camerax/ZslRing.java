@@ -0,0 +1,243 @@
+package com.kumaraswamy.camerax;
+
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Size;
+import android.view.Surface;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Holds the last few full resolution frames of the preview session for zero shutter lag
+ * pictures. The reader keeps streaming; when the ring is full the oldest frame goes back to it.
+ * Capture results are kept next to the frames so a frame can be reprocessed.
+ */
+final class ZslRing {
+
+    /**
+     * Receives the encoded picture of a frame. It is reset and reused from shot to shot, its
+     * bytes are read in place instead of being copied out.
+     */
+    static final class JpegStream extends ByteArrayOutputStream {
+        JpegStream(final int size) {
+            super(size);
+        }
+
+        /**
+         * The bytes written since the last reset, valid until the next one.
+         */
+        ByteBuffer contents() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private static final int SHARPNESS_STEP = 16;
+
+    /**
+     * Images the reader can hand out beyond the ring: one arriving and every frame taken out to
+     * be turned into a picture.
+     */
+    private final int spareImages;
+
+    private ImageReader reader;
+    private Image[] images = new Image[0];
+    private long[] timestamps = new long[0];
+    private float[] sharpness = new float[0];
+    private TotalCaptureResult[] results = new TotalCaptureResult[0];
+    private int nextResult;
+    private volatile boolean measureSharpness;
+
+    private final ImageReader.OnImageAvailableListener listener = new ImageReader.OnImageAvailableListener() {
+        public void onImageAvailable(final ImageReader reader) {
+            final Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                // every image is held, the frame is dropped until one is returned
+                return;
+            }
+            if (image != null) {
+                add(image);
+            }
+        }
+    };
+
+    /**
+     * @param maxTaken how many taken frames can be held at once, until the pictures made from
+     *                 them are done
+     */
+    ZslRing(final int maxTaken) {
+        spareImages = 1 + maxTaken;
+    }
+
+    /**
+     * The number of frames a memory budget allows at the given size, after the spare images
+     * the reader needs.
+     */
+    int capacity(final Size size, final long budgetBytes, final int maxFrames) {
+        final long frameBytes = (long) size.getWidth() * size.getHeight() * 3 / 2;
+        return (int) Math.max(0, Math.min(maxFrames, budgetBytes / frameBytes - spareImages));
+    }
+
+    /**
+     * Returns the surface to add to the session, reusing the reader when nothing changed. Frames
+     * of an earlier session are released.
+     *
+     * @param format YUV_420_888, or PRIVATE for a ring that is only reprocessed
+     */
+    synchronized Surface open(final Size size, final int format, final int capacity, final Handler handler) {
+        clear();
+        if (reader == null || reader.getWidth() != size.getWidth() || reader.getHeight() != size.getHeight()
+                || reader.getImageFormat() != format || images.length != capacity) {
+            close();
+            reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), format, capacity + spareImages);
+            images = new Image[capacity];
+            timestamps = new long[capacity];
+            sharpness = new float[capacity];
+            results = new TotalCaptureResult[capacity + spareImages];
+            Arrays.fill(timestamps, -1);
+        }
+        reader.setOnImageAvailableListener(listener, handler);
+        return reader.getSurface();
+    }
+
+    boolean isOpen() {
+        return reader != null;
+    }
+
+    /**
+     * Measure the sharpness of arriving YUV frames, needed for {@link ZslFrameSelector#SHARPEST}.
+     */
+    void setMeasureSharpness(final boolean measure) {
+        measureSharpness = measure;
+    }
+
+    private synchronized void add(final Image image) {
+        if (images.length == 0) {
+            image.close();
+            return;
+        }
+        int slot = 0;
+        for (int i = 0; i < images.length; i++) {
+            if (timestamps[i] < timestamps[slot]) {
+                slot = i;
+            }
+        }
+        if (images[slot] != null) {
+            images[slot].close();
+        }
+        images[slot] = image;
+        timestamps[slot] = image.getTimestamp();
+        sharpness[slot] = 0;
+        if (measureSharpness && image.getFormat() == ImageFormat.YUV_420_888) {
+            final Image.Plane luma = image.getPlanes()[0];
+            sharpness[slot] = ZslFrameSelector.sharpness(luma.getBuffer(), luma.getRowStride(),
+                    image.getWidth(), image.getHeight(), SHARPNESS_STEP);
+        }
+    }
+
+    /**
+     * Keeps the result of a request that targeted the ring.
+     */
+    synchronized void addResult(final TotalCaptureResult result) {
+        if (results.length == 0) {
+            return;
+        }
+        results[nextResult] = result;
+        nextResult = (nextResult + 1) % results.length;
+    }
+
+    /**
+     * Removes the frame to make a picture from, which the caller then owns.
+     *
+     * @param selection {@link ZslFrameSelector#CLOSEST} or {@link ZslFrameSelector#SHARPEST}
+     * @param target    sensor timestamp of the tap, for the closest frame
+     * @param window    number of newest frames the sharpest is picked from
+     * @return null if the ring holds no frame
+     */
+    synchronized Image take(final int selection, final long target, final int window) {
+        final int slot = selection == ZslFrameSelector.SHARPEST
+                ? ZslFrameSelector.sharpest(timestamps, sharpness, window)
+                : ZslFrameSelector.closest(timestamps, target);
+        if (slot < 0) {
+            return null;
+        }
+        final Image image = images[slot];
+        images[slot] = null;
+        timestamps[slot] = -1;
+        return image;
+    }
+
+    /**
+     * @return the capture result of the frame with the timestamp, null if it was not kept
+     */
+    synchronized TotalCaptureResult result(final long timestamp) {
+        for (final TotalCaptureResult result : results) {
+            if (result != null) {
+                final Long sensorTimestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+                if (sensorTimestamp != null && sensorTimestamp == timestamp) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns every held frame to the reader.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < images.length; i++) {
+            if (images[i] != null) {
+                images[i].close();
+                images[i] = null;
+            }
+            timestamps[i] = -1;
+        }
+        Arrays.fill(results, null);
+    }
+
+    synchronized void close() {
+        clear();
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    /**
+     * Copies a YUV_420_888 image into NV21 order for {@code YuvImage}.
+     *
+     * @param out at least width * height * 3 / 2 bytes
+     */
+    static void toNv21(final Image image, final byte[] out) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Image.Plane[] planes = image.getPlanes();
+        final ByteBuffer y = planes[0].getBuffer();
+        final int yRowStride = planes[0].getRowStride();
+        int offset = 0;
+        for (int row = 0; row < height; row++) {
+            y.position(row * yRowStride);
+            y.get(out, offset, width);
+            offset += width;
+        }
+        final ByteBuffer u = planes[1].getBuffer();
+        final ByteBuffer v = planes[2].getBuffer();
+        final int uvRowStride = planes[1].getRowStride();
+        final int uvPixelStride = planes[1].getPixelStride();
+        for (int row = 0; row < height / 2; row++) {
+            for (int column = 0; column < width / 2; column++) {
+                final int index = row * uvRowStride + column * uvPixelStride;
+                out[offset++] = v.get(index);
+                out[offset++] = u.get(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnalysisStreamTest {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    private static final int Y_STRIDE = 16;
+
+    /**
+     * A synthetic frame with padded rows whose luma is x + 10 * y, and interleaved chroma the
+     * way most devices deliver it.
+     */
+    private static YuvFrame frame(final long timestamp) {
+        final ByteBuffer y = ByteBuffer.allocateDirect(Y_STRIDE * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int column = 0; column < WIDTH; column++) {
+                y.put(row * Y_STRIDE + column, (byte) (column + 10 * row));
+            }
+        }
+        final ByteBuffer chroma = ByteBuffer.allocateDirect(Y_STRIDE * HEIGHT / 2);
+        final ByteBuffer u = chroma.duplicate();
+        chroma.position(1);
+        final ByteBuffer v = chroma.slice();
+        final YuvFrame frame = new YuvFrame();
+        frame.set(WIDTH, HEIGHT, timestamp, y, Y_STRIDE, u, v, Y_STRIDE, 2);
+        return frame;
+    }
+
+    /**
+     * Sums every luma value by reading the plane to its end, as an analyzer copying it would.
+     */
+    private static final class Summer implements FrameAnalyzer {
+        final List<Long> sums = new ArrayList<>();
+
+        public void analyze(final YuvFrame frame) {
+            final ByteBuffer y = frame.getYPlane();
+            long sum = 0;
+            int index = 0;
+            while (y.hasRemaining()) {
+                final int value = y.get() & 0xFF;
+                if (index % frame.getYRowStride() < frame.getWidth()) {
+                    sum += value;
+                }
+                index++;
+            }
+            sums.add(sum);
+        }
+    }
+
+    @Test
+    public void readsPaddedPlanes() {
+        final YuvFrame frame = frame(5);
+        assertEquals(0, frame.luma(0, 0));
+        assertEquals(7, frame.luma(7, 0));
+        assertEquals(37, frame.luma(7, 3));
+        assertEquals(5, frame.getTimestamp());
+        assertEquals(2, frame.getUvPixelStride());
+    }
+
+    @Test
+    public void everyAnalyzerSeesTheWholeFrame() {
+        final AnalysisStream stream = new AnalysisStream();
+        final Summer first = new Summer();
+        final Summer second = new Summer();
+        stream.addAnalyzer(first);
+        stream.addAnalyzer(second);
+        stream.deliver(frame(1));
+        // 4 rows of 0..7 plus 10 * row for each of the 8 columns
+        final long expected = 4 * 28 + 8 * (0 + 10 + 20 + 30);
+        assertEquals(expected, (long) first.sums.get(0));
+        assertEquals(expected, (long) second.sums.get(0));
+    }
+
+    @Test
+    public void failingAnalyzerDoesNotStopOthers() {
+        final AnalysisStream stream = new AnalysisStream();
+        final Summer summer = new Summer();
+        stream.addAnalyzer(new FrameAnalyzer() {
+            public void analyze(final YuvFrame frame) {
+                throw new IllegalStateException("decoder crashed");
+            }
+        });
+        stream.addAnalyzer(summer);
+        stream.deliver(frame(1));
+        stream.deliver(frame(2));
+        assertEquals(2, summer.sums.size());
+    }
+
+    @Test
+    public void removedAnalyzerGetsNoFrames() {
+        final AnalysisStream stream = new AnalysisStream();
+        final Summer kept = new Summer();
+        final Summer removed = new Summer();
+        stream.addAnalyzer(removed);
+        stream.addAnalyzer(kept);
+        stream.removeAnalyzer(removed);
+        stream.removeAnalyzer(new Summer());
+        stream.deliver(frame(1));
+        assertEquals(0, removed.sums.size());
+        assertEquals(1, kept.sums.size());
+    }
+}
@@ -0,0 +1,59 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BufferPoolTest {
+
+    private static ByteBuffer bytes(final int length) {
+        return ByteBuffer.wrap(new byte[length]);
+    }
+
+    @Test
+    public void roundsNewBuffersUp() {
+        final BufferPool pool = new BufferPool(1 << 20);
+        final BufferPool.Buffer buffer = pool.acquire(1000, 0);
+        assertEquals(BufferPool.ROUNDING, pool.allocatedBytes());
+        buffer.release();
+        final BufferPool.Buffer larger = pool.acquire(2000, 0);
+        assertSame(buffer, larger);
+        assertEquals(1, pool.hits());
+    }
+
+    @Test
+    public void allocatesTheGivenCapacity() {
+        final BufferPool pool = new BufferPool(1 << 20);
+        final BufferPool.Buffer buffer = pool.acquire(1000, 300 * 1024);
+        assertEquals(320 * 1024, pool.allocatedBytes());
+        buffer.release();
+        // a picture of any size up to the capacity reuses it
+        assertSame(buffer, pool.acquire(290 * 1024, 300 * 1024));
+        assertEquals(1, pool.misses());
+    }
+
+    @Test
+    public void rejectsPastTheLimit() {
+        final BufferPool pool = new BufferPool(BufferPool.ROUNDING);
+        final BufferPool.Buffer held = pool.acquire(100, 0);
+        assertNull(pool.acquire(100, 0));
+        assertEquals(1, pool.rejected());
+        held.release();
+    }
+
+    @Test
+    public void fillsParts() {
+        final BufferPool pool = new BufferPool(1 << 20);
+        final BufferPool.Buffer buffer = pool.acquire(7, 0);
+        buffer.fill(ByteBuffer.wrap(new byte[]{1, 2, 3}), bytes(0), ByteBuffer.wrap(new byte[]{4, 5, 6, 7}));
+        assertEquals(7, buffer.length());
+        final ByteBuffer view = buffer.view();
+        assertEquals(7, view.remaining());
+        assertEquals(1, view.get(0));
+        assertEquals(7, view.get(6));
+    }
+}
@@ -0,0 +1,102 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BurstPacerTest {
+    private final FakeCaptureBackend backend = new FakeCaptureBackend();
+    private final BurstPacer pacer = new BurstPacer(3);
+
+    @Test
+    public void issuesNothingBeforeStart() {
+        assertFalse(pacer.isRunning());
+        assertFalse(pacer.issue(backend, null));
+        assertEquals(0, backend.captures.size());
+    }
+
+    @Test
+    public void intervalIssuesOnePerTickUntilTheCount() {
+        pacer.start(null, 4, 500);
+        int ticks = 0;
+        while (pacer.hasMore()) {
+            assertTrue(pacer.issue(backend, null));
+            ticks++;
+            // with an interval the next capture waits for the tick, not for the frame
+            assertFalse(pacer.done());
+        }
+        assertEquals(4, ticks);
+        assertEquals(4, backend.captures.size());
+        assertFalse(pacer.issue(backend, null));
+        assertEquals(0, backend.repeating.size());
+    }
+
+    @Test
+    public void skippedTickKeepsTheCount() {
+        final BurstPacer pacer = new BurstPacer(1);
+        pacer.start(null, 3, 500);
+        assertTrue(pacer.issue(backend, null));
+        // the frame is still being written when the next tick comes
+        assertFalse(pacer.issue(backend, null));
+        assertTrue(pacer.skip());
+        assertFalse(pacer.done());
+        assertTrue(pacer.issue(backend, null));
+        assertFalse(pacer.hasMore());
+        assertFalse(pacer.skip());
+        assertEquals(2, backend.captures.size());
+    }
+
+    @Test
+    public void capsFramesInFlight() {
+        pacer.start(null, 0, 0);
+        int issued = 0;
+        while (pacer.issue(backend, null)) {
+            issued++;
+        }
+        assertEquals(3, issued);
+        assertEquals(3, pacer.outstanding());
+        assertTrue(pacer.done());
+        assertTrue(pacer.issue(backend, null));
+        assertFalse(pacer.issue(backend, null));
+        assertEquals(4, backend.captures.size());
+    }
+
+    @Test
+    public void lostFramesFreeTheirSlot() {
+        pacer.start(null, 5, 0);
+        while (pacer.issue(backend, null)) {
+            // fill
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pacer.done());
+        }
+        while (pacer.issue(backend, null)) {
+            // refill
+        }
+        assertEquals(5, backend.captures.size());
+        assertFalse(pacer.hasMore());
+    }
+
+    @Test
+    public void stopEndsIssuing() {
+        pacer.start(null, 0, 0);
+        assertTrue(pacer.issue(backend, null));
+        pacer.stop();
+        assertFalse(pacer.isRunning());
+        assertFalse(pacer.done());
+        assertFalse(pacer.issue(backend, null));
+        assertEquals(1, backend.captures.size());
+    }
+
+    @Test
+    public void burstIsTrackedWithoutIssuing() {
+        pacer.startBurst(4);
+        assertFalse(pacer.isRunning());
+        assertEquals(4, pacer.outstanding());
+        assertFalse(pacer.done());
+        assertEquals(3, pacer.outstanding());
+        assertEquals(0, backend.captures.size());
+    }
+}
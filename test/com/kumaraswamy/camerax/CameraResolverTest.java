@@ -0,0 +1,84 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CameraResolverTest {
+    private static final int FULL = 1;
+    private static final int LIMITED = 0;
+
+    private static CameraResolver.Lens back(final String id, final float focalLength, final boolean logical) {
+        return new CameraResolver.Lens(id, CameraResolver.FACING_BACK, focalLength, FULL, logical, true);
+    }
+
+    private static CameraResolver.Lens front(final String id) {
+        return new CameraResolver.Lens(id, CameraResolver.FACING_FRONT, 3.0f, LIMITED, false, true);
+    }
+
+    /**
+     * Each row is a listing and the ids expected for front, rear, ultra-wide and tele.
+     */
+    @Test
+    public void resolvesEachTypeForEachListing() {
+        final Object[][] table = {
+                // logical main with physical ultra-wide and tele listed after it
+                {Arrays.asList(back("0", 5.4f, true), front("1"), back("2", 2.2f, false), back("3", 9.0f, false)),
+                        new String[]{"1", "0", "2", "3"}},
+                // plain phone, first listed back camera is the main one
+                {Arrays.asList(back("0", 4.2f, false), front("1"), back("2", 1.8f, false), back("3", 6.0f, false)),
+                        new String[]{"1", "0", "2", "3"}},
+                // logical camera listed after its physical lenses is still the main one
+                {Arrays.asList(back("2", 2.2f, false), back("3", 9.0f, false), back("0", 5.4f, true), front("1")),
+                        new String[]{"1", "0", "2", "3"}},
+                // single back camera: every back type falls back to it
+                {Arrays.asList(back("0", 4.0f, false), front("1")),
+                        new String[]{"1", "0", "0", "0"}},
+                // tablet with only a front camera
+                {Collections.singletonList(front("1")),
+                        new String[]{"1", "1", "1", "1"}},
+                // only a back camera, front falls back to it
+                {Collections.singletonList(back("0", 4.0f, false)),
+                        new String[]{"0", "0", "0", "0"}},
+        };
+        final int[] types = {CameraResolver.TYPE_FRONT, CameraResolver.TYPE_REAR,
+                CameraResolver.TYPE_ULTRA_WIDE, CameraResolver.TYPE_TELE};
+        for (int row = 0; row < table.length; row++) {
+            @SuppressWarnings("unchecked") final List<CameraResolver.Lens> lenses = (List<CameraResolver.Lens>) table[row][0];
+            final String[] expected = (String[]) table[row][1];
+            for (int i = 0; i < types.length; i++) {
+                assertEquals("row " + row + " type " + types[i], expected[i], CameraResolver.resolve(lenses, types[i]).id);
+            }
+        }
+    }
+
+    @Test
+    public void everyLensOfTheLogicalListingHasAType() {
+        final List<CameraResolver.Lens> lenses = Arrays.asList(back("0", 5.4f, true), front("1"),
+                back("2", 2.2f, false), back("3", 9.0f, false));
+        assertEquals(CameraResolver.TYPE_REAR, CameraResolver.typeOf(lenses, lenses.get(0)));
+        assertEquals(CameraResolver.TYPE_FRONT, CameraResolver.typeOf(lenses, lenses.get(1)));
+        assertEquals(CameraResolver.TYPE_ULTRA_WIDE, CameraResolver.typeOf(lenses, lenses.get(2)));
+        assertEquals(CameraResolver.TYPE_TELE, CameraResolver.typeOf(lenses, lenses.get(3)));
+    }
+
+    @Test
+    public void skipsCamerasThatAreNotBackwardCompatible() {
+        final List<CameraResolver.Lens> lenses = Arrays.asList(
+                new CameraResolver.Lens("9", CameraResolver.FACING_BACK, 4.0f, FULL, false, false),
+                back("0", 4.0f, false), front("1"));
+        assertEquals("0", CameraResolver.resolve(lenses, CameraResolver.TYPE_REAR).id);
+        assertEquals(-1, CameraResolver.typeOf(lenses, lenses.get(0)));
+    }
+
+    @Test
+    public void returnsNullWithoutCameras() {
+        assertNull(CameraResolver.resolve(new ArrayList<CameraResolver.Lens>(), CameraResolver.TYPE_REAR));
+    }
+}
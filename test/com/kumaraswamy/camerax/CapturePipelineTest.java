@@ -0,0 +1,58 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CapturePipelineTest {
+
+    @Test
+    public void finiteSequenceCompletesWhenWritten() {
+        final CapturePipeline pipeline = new CapturePipeline(3);
+        pipeline.start(2);
+        assertEquals(0, pipeline.offer());
+        assertEquals(1, pipeline.offer());
+        assertTrue(pipeline.isFilled());
+        assertFalse(pipeline.complete(true));
+        assertTrue(pipeline.complete(true));
+        assertEquals(2, pipeline.saved());
+        assertFalse(pipeline.isActive());
+    }
+
+    @Test
+    public void lostFrameCountsTowardCompletion() {
+        final CapturePipeline pipeline = new CapturePipeline(3);
+        pipeline.start(3);
+        assertEquals(0, pipeline.offer());
+        assertFalse(pipeline.fail());
+        assertEquals(2, pipeline.offer());
+        assertFalse(pipeline.complete(true));
+        assertTrue(pipeline.complete(true));
+        assertEquals(2, pipeline.saved());
+        assertEquals(1, pipeline.dropped());
+    }
+
+    @Test
+    public void sequenceOfOnlyLostFramesCompletes() {
+        final CapturePipeline pipeline = new CapturePipeline(3);
+        pipeline.start(2);
+        assertFalse(pipeline.fail());
+        assertTrue(pipeline.fail());
+        assertEquals(2, pipeline.dropped());
+        assertEquals(CapturePipeline.SKIPPED, pipeline.offer());
+    }
+
+    @Test
+    public void framesPastTheWriterAreDropped() {
+        final CapturePipeline pipeline = new CapturePipeline(1);
+        pipeline.start(0);
+        assertEquals(0, pipeline.offer());
+        assertEquals(CapturePipeline.DROPPED, pipeline.offer());
+        assertFalse(pipeline.stop());
+        assertTrue(pipeline.complete(true));
+        assertEquals(1, pipeline.saved());
+        assertEquals(1, pipeline.dropped());
+    }
+}
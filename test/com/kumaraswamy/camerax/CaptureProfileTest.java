@@ -0,0 +1,65 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class CaptureProfileTest {
+    private static final int U = CaptureProfile.UNSET;
+
+    /**
+     * A FULL camera listing OFF, FAST and HIGH_QUALITY everywhere and optical stabilization.
+     */
+    private static int[][] full() {
+        final int[][] available = new int[CaptureProfile.KEY_COUNT][];
+        for (int key = 0; key < CaptureProfile.STABILIZATION; key++) {
+            available[key] = new int[]{0, 1, 2};
+        }
+        available[CaptureProfile.STABILIZATION] = new int[]{0, 1};
+        return available;
+    }
+
+    private static int[] select(final int profile, final boolean still, final int[][] available) {
+        final int[] out = new int[CaptureProfile.KEY_COUNT];
+        CaptureProfile.select(profile, still, available, out);
+        return out;
+    }
+
+    @Test
+    public void selectsPerProfileOnAFullCamera() {
+        final Object[][] table = {
+                {CaptureProfile.SPEED, false, new int[]{U, U, U, U, U, U, U}},
+                {CaptureProfile.SPEED, true, new int[]{1, 1, 1, 1, 1, 1, U}},
+                {CaptureProfile.BALANCED, false, new int[]{1, 1, 1, 1, 1, 1, U}},
+                {CaptureProfile.BALANCED, true, new int[]{2, 2, 2, 2, 2, 2, 1}},
+                {CaptureProfile.QUALITY, false, new int[]{1, 1, 1, 1, 1, 1, 1}},
+                {CaptureProfile.QUALITY, true, new int[]{2, 2, 2, 2, 2, 2, 1}},
+        };
+        for (final Object[] row : table) {
+            assertArrayEquals("profile " + row[0] + " still " + row[1], (int[]) row[2],
+                    select((Integer) row[0], (Boolean) row[1], full()));
+        }
+    }
+
+    @Test
+    public void fallsBackToFastThenUnset() {
+        final int[][] available = full();
+        available[CaptureProfile.EDGE] = new int[]{0, 1};
+        available[CaptureProfile.TONEMAP] = new int[]{0};
+        available[CaptureProfile.STABILIZATION] = new int[]{0};
+        assertArrayEquals(new int[]{1, 2, U, 2, 2, 2, U}, select(CaptureProfile.QUALITY, true, available));
+    }
+
+    @Test
+    public void assumesFastAndHighQualityWithoutAList() {
+        final int[][] available = new int[CaptureProfile.KEY_COUNT][];
+        assertArrayEquals(new int[]{2, 2, 2, 2, 2, 2, U}, select(CaptureProfile.QUALITY, true, available));
+    }
+
+    @Test
+    public void leavesKeysTheCameraListsEmpty() {
+        final int[][] available = full();
+        available[CaptureProfile.COLOR_CORRECTION] = new int[0];
+        assertArrayEquals(new int[]{1, 1, 1, 1, U, 1, U}, select(CaptureProfile.BALANCED, false, available));
+    }
+}
@@ -0,0 +1,107 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceLifecycleTest {
+    private final DeviceLifecycle lifecycle = new DeviceLifecycle();
+
+    @Test
+    public void opensAndCloses() {
+        assertTrue(lifecycle.requestOpen());
+        assertTrue(lifecycle.onOpened());
+        assertTrue(lifecycle.isOpened());
+        assertTrue(lifecycle.requestClose());
+        assertEquals(DeviceLifecycle.CLOSING, lifecycle.state());
+        assertFalse(lifecycle.onClosed());
+        assertEquals(DeviceLifecycle.CLOSED, lifecycle.state());
+    }
+
+    @Test
+    public void repeatedOpenRequestsOpenOnce() {
+        assertTrue(lifecycle.requestOpen());
+        assertFalse(lifecycle.requestOpen());
+        assertTrue(lifecycle.onOpened());
+        assertFalse(lifecycle.requestOpen());
+    }
+
+    @Test
+    public void pauseWhileOpeningClosesTheArrivingDevice() {
+        assertTrue(lifecycle.requestOpen());
+        assertFalse(lifecycle.requestClose());
+        assertFalse(lifecycle.onOpened());
+        assertEquals(DeviceLifecycle.CLOSING, lifecycle.state());
+        assertFalse(lifecycle.onClosed());
+    }
+
+    @Test
+    public void quickPauseAndResumeReopensAfterTheClose() {
+        assertTrue(lifecycle.requestOpen());
+        assertTrue(lifecycle.onOpened());
+        assertTrue(lifecycle.requestClose());
+        // resumed before the close finished: no second device
+        assertFalse(lifecycle.requestOpen());
+        assertTrue(lifecycle.onClosed());
+        assertEquals(DeviceLifecycle.OPENING, lifecycle.state());
+        assertTrue(lifecycle.onOpened());
+    }
+
+    @Test
+    public void pauseAndResumeWhileOpeningKeepsTheDevice() {
+        assertTrue(lifecycle.requestOpen());
+        assertFalse(lifecycle.requestClose());
+        assertFalse(lifecycle.requestOpen());
+        assertTrue(lifecycle.onOpened());
+    }
+
+    @Test
+    public void switchWhileOpenedOpensTheNewCamera() {
+        assertTrue(lifecycle.requestOpen());
+        assertTrue(lifecycle.onOpened());
+        assertTrue(lifecycle.requestSwitch());
+        assertEquals(DeviceLifecycle.OPENING, lifecycle.state());
+        assertTrue(lifecycle.onOpened());
+    }
+
+    @Test
+    public void switchWhileOpeningDropsTheStaleDevice() {
+        assertTrue(lifecycle.requestOpen());
+        assertFalse(lifecycle.requestSwitch());
+        assertFalse(lifecycle.onOpened());
+        // the stale device closes, then the wanted camera opens
+        assertTrue(lifecycle.onClosed());
+        assertTrue(lifecycle.onOpened());
+    }
+
+    @Test
+    public void lostDeviceIsNotReopened() {
+        assertTrue(lifecycle.requestOpen());
+        assertTrue(lifecycle.onOpened());
+        lifecycle.onLost();
+        assertFalse(lifecycle.onClosed());
+        assertTrue(lifecycle.requestOpen());
+    }
+
+    @Test
+    public void failedOpenRetriesOnlyWhenAsked() {
+        assertTrue(lifecycle.requestOpen());
+        lifecycle.onOpenFailed(false);
+        assertEquals(DeviceLifecycle.CLOSED, lifecycle.state());
+        assertFalse(lifecycle.onOpened());
+        assertTrue(lifecycle.requestOpen());
+        lifecycle.onOpenFailed(true);
+        assertTrue(lifecycle.requestOpen());
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        assertTrue(lifecycle.requestOpen());
+        lifecycle.reset();
+        assertEquals(DeviceLifecycle.CLOSED, lifecycle.state());
+        assertFalse(lifecycle.onOpened());
+        assertFalse(lifecycle.onClosed());
+    }
+}
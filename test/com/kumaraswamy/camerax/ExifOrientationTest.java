@@ -0,0 +1,98 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ExifOrientationTest {
+    private static final byte[] SOI = {(byte) 0xff, (byte) 0xd8};
+    private static final byte[] JFIF = {(byte) 0xff, (byte) 0xe0, 0, 6, 'J', 'F', 'I', 'F'};
+    private static final byte[] SCAN = {(byte) 0xff, (byte) 0xda, 0, 2, 1, 2, 3, (byte) 0xff, (byte) 0xd9};
+
+    private static byte[] concat(final byte[]... parts) {
+        int length = 0;
+        for (final byte[] part : parts) {
+            length += part.length;
+        }
+        final byte[] out = new byte[length];
+        int at = 0;
+        for (final byte[] part : parts) {
+            System.arraycopy(part, 0, out, at, part.length);
+            at += part.length;
+        }
+        return out;
+    }
+
+    private static byte[] join(final ByteBuffer[] parts) {
+        final ByteBuffer out = ByteBuffer.allocate(ExifOrientation.length(parts));
+        for (final ByteBuffer part : parts) {
+            out.put(part.duplicate());
+        }
+        return out.array();
+    }
+
+    /**
+     * An EXIF segment whose first IFD holds a make entry and the orientation.
+     */
+    private static byte[] exif(final boolean littleEndian, final int orientation) {
+        final ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 24 + 4);
+        tiff.order(littleEndian ? java.nio.ByteOrder.LITTLE_ENDIAN : java.nio.ByteOrder.BIG_ENDIAN);
+        tiff.put(littleEndian ? (byte) 'I' : (byte) 'M').put(littleEndian ? (byte) 'I' : (byte) 'M')
+                .putShort((short) 42).putInt(8).putShort((short) 2)
+                .putShort((short) 0x010f).putShort((short) 2).putInt(4).putInt(0)
+                .putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0)
+                .putInt(0);
+        final ByteBuffer segment = ByteBuffer.allocate(4 + 6 + tiff.capacity());
+        segment.put((byte) 0xff).put((byte) 0xe1).putShort((short) (segment.capacity() - 2))
+                .put(new byte[]{'E', 'x', 'i', 'f', 0, 0}).put(tiff.array());
+        return segment.array();
+    }
+
+    @Test
+    public void patchesBigEndianTagInPlace() {
+        final byte[] jpeg = concat(SOI, exif(false, 1), SCAN);
+        final ByteBuffer source = ByteBuffer.wrap(jpeg.clone());
+        final byte[] out = join(ExifOrientation.split(source, 90));
+        assertArrayEquals(concat(SOI, exif(false, 6), SCAN), out);
+        assertArrayEquals(jpeg, source.array());
+        assertEquals(0, source.position());
+    }
+
+    @Test
+    public void patchesLittleEndianTagInPlace() {
+        final byte[] out = join(ExifOrientation.split(ByteBuffer.wrap(concat(SOI, JFIF, exif(true, 1), SCAN)), 270));
+        assertArrayEquals(concat(SOI, JFIF, exif(true, 8), SCAN), out);
+    }
+
+    @Test
+    public void insertsSegmentWithoutExif() {
+        final byte[] jpeg = concat(SOI, JFIF, SCAN);
+        final ByteBuffer[] parts = ExifOrientation.split(ByteBuffer.wrap(jpeg), 180);
+        assertEquals(jpeg.length + ExifOrientation.SEGMENT_LENGTH, ExifOrientation.length(parts));
+        final byte[] out = join(parts);
+        // splitting again finds the inserted tag
+        final byte[] again = join(ExifOrientation.split(ByteBuffer.wrap(out), 90));
+        assertEquals(out.length, again.length);
+        assertEquals(3, out[2 + 4 + 6 + 8 + 2 + 8 + 1]);
+        assertEquals(6, again[2 + 4 + 6 + 8 + 2 + 8 + 1]);
+    }
+
+    @Test
+    public void honoursBufferPosition() {
+        final byte[] jpeg = concat(new byte[]{9, 9, 9}, SOI, exif(false, 1), SCAN);
+        final ByteBuffer source = ByteBuffer.wrap(jpeg);
+        source.position(3);
+        assertArrayEquals(concat(SOI, exif(false, 3), SCAN), join(ExifOrientation.split(source, 180)));
+    }
+
+    @Test
+    public void leavesOtherDataAlone() {
+        final ByteBuffer source = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5});
+        final ByteBuffer[] parts = ExifOrientation.split(source, 90);
+        assertEquals(1, parts.length);
+        assertEquals(5, parts[0].remaining());
+    }
+}
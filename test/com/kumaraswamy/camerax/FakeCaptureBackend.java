@@ -0,0 +1,98 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.util.Size;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records what is sent to the camera instead of talking to one.
+ */
+class FakeCaptureBackend implements CaptureBackend {
+    final List<CaptureRequest> captures = new ArrayList<>();
+    final List<CaptureRequest> repeating = new ArrayList<>();
+    int bursts;
+    int sessions;
+    boolean failCaptures;
+    boolean configured = true;
+    boolean closed;
+
+    public void createSession(final List<Surface> outputs, final int format, final Size jpegSize, final int maxImages,
+                              final ImageReader.OnImageAvailableListener imageListener,
+                              final SessionListener sessionListener) {
+        sessions++;
+        configured = true;
+        sessionListener.onConfigured();
+    }
+
+    public void createHighSpeedSession(final List<Surface> outputs, final SessionListener sessionListener) {
+        sessions++;
+        configured = true;
+        sessionListener.onConfigured();
+    }
+
+    public boolean isHighSpeed() {
+        return false;
+    }
+
+    public void createReprocessableSession(final int inputFormat, final Size inputSize, final List<Surface> outputs,
+                                           final int format, final Size jpegSize, final int maxImages,
+                                           final ImageReader.OnImageAvailableListener imageListener,
+                                           final SessionListener sessionListener) {
+        createSession(outputs, format, jpegSize, maxImages, imageListener, sessionListener);
+    }
+
+    public boolean isReprocessable() {
+        return false;
+    }
+
+    public CaptureRequest.Builder createReprocessRequest(final TotalCaptureResult result) {
+        return null;
+    }
+
+    public void reprocess(final Image input, final CaptureRequest request,
+                          final CameraCaptureSession.CaptureCallback callback) {
+        captures.add(request);
+    }
+
+    public CaptureRequest.Builder createCaptureRequest(final int template) {
+        return null;
+    }
+
+    public Surface getJpegSurface() {
+        return null;
+    }
+
+    public boolean isConfigured() {
+        return configured;
+    }
+
+    public void setRepeatingRequest(final CaptureRequest request, final CameraCaptureSession.CaptureCallback callback) {
+        repeating.add(request);
+    }
+
+    public void capture(final CaptureRequest request, final CameraCaptureSession.CaptureCallback callback)
+            throws CameraAccessException {
+        if (failCaptures) {
+            throw new CameraAccessException(CameraAccessException.CAMERA_ERROR);
+        }
+        captures.add(request);
+    }
+
+    public void captureBurst(final List<CaptureRequest> requests, final CameraCaptureSession.CaptureCallback callback) {
+        bursts++;
+        captures.addAll(requests);
+    }
+
+    public void close() {
+        closed = true;
+        configured = false;
+    }
+}
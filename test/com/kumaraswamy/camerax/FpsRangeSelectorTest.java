@@ -0,0 +1,53 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FpsRangeSelectorTest {
+    // AE target ranges as a typical device lists them
+    private static final int[] RANGES = {15, 15, 7, 24, 24, 24, 7, 30, 15, 30, 30, 30};
+
+    @Test
+    public void fixedRangeAtTheTarget() {
+        assertEquals(10, FpsRangeSelector.select(RANGES, 30));
+        assertEquals(4, FpsRangeSelector.select(RANGES, 24));
+    }
+
+    @Test
+    public void highestLowerBoundEndingAtTheTarget() {
+        assertEquals(2, FpsRangeSelector.select(new int[]{7, 30, 15, 30}, 30));
+    }
+
+    @Test
+    public void narrowestHoldingTheTarget() {
+        // nothing ends at 20, 15-30 holds it more steadily than 7-30
+        assertEquals(8, FpsRangeSelector.select(RANGES, 20));
+        assertEquals(2, FpsRangeSelector.select(new int[]{7, 30, 10, 24, 7, 24}, 20));
+    }
+
+    @Test
+    public void fastestBelowAnUnreachableTarget() {
+        assertEquals(10, FpsRangeSelector.select(RANGES, 60));
+    }
+
+    @Test
+    public void slowestAboveATooLowTarget() {
+        assertEquals(0, FpsRangeSelector.select(new int[]{15, 15, 24, 24, 30, 30}, 5));
+        // on a tie the steadier one
+        assertEquals(2, FpsRangeSelector.select(new int[]{10, 15, 15, 15}, 5));
+    }
+
+    @Test
+    public void noRanges() {
+        assertEquals(-1, FpsRangeSelector.select(new int[0], 30));
+    }
+
+    @Test
+    public void highSpeedNeedsAnExactUpperBound() {
+        final int[] highSpeed = {30, 120, 120, 120, 30, 240, 240, 240};
+        assertEquals(2, FpsRangeSelector.selectHighSpeed(highSpeed, 120));
+        assertEquals(6, FpsRangeSelector.selectHighSpeed(highSpeed, 240));
+        assertEquals(-1, FpsRangeSelector.selectHighSpeed(highSpeed, 60));
+    }
+}
@@ -0,0 +1,98 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MeteringMathTest {
+    private static final float[] IDENTITY = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+    private static final int[] SENSOR = {0, 0, 4000, 3000};
+
+    @Test
+    public void centerMapsToCenter() {
+        final int[] out = new int[2];
+        for (int orientation = 0; orientation < 360; orientation += 90) {
+            assertTrue(MeteringMath.viewToSensor(IDENTITY, 540, 960, 1080, 1920, orientation, false, SENSOR, out));
+            assertArrayEquals(new int[]{2000, 1500}, out);
+        }
+    }
+
+    @Test
+    public void portraitBackCameraRotates() {
+        final int[] out = new int[2];
+        // top left of a portrait view is the bottom left of a sensor mounted at 90 degrees
+        assertTrue(MeteringMath.viewToSensor(IDENTITY, 0, 0, 1080, 1920, 90, false, SENSOR, out));
+        assertArrayEquals(new int[]{0, 3000}, out);
+        assertTrue(MeteringMath.viewToSensor(IDENTITY, 1080, 0, 1080, 1920, 90, false, SENSOR, out));
+        assertArrayEquals(new int[]{0, 0}, out);
+    }
+
+    @Test
+    public void frontCameraMirrors() {
+        final int[] back = new int[2];
+        final int[] front = new int[2];
+        MeteringMath.viewToSensor(IDENTITY, 200, 400, 1080, 1920, 270, false, SENSOR, back);
+        MeteringMath.viewToSensor(IDENTITY, 1080 - 200, 400, 1080, 1920, 270, true, SENSOR, front);
+        assertArrayEquals(back, front);
+    }
+
+    @Test
+    public void rejectsPointsOutsideThePreview() {
+        final float[] scaled = {0.5f, 0, 270, 0, 1, 0, 0, 0, 1};
+        final int[] out = new int[2];
+        assertFalse(MeteringMath.viewToSensor(scaled, 100, 100, 1080, 1920, 90, false, SENSOR, out));
+        assertTrue(MeteringMath.viewToSensor(scaled, 540, 100, 1080, 1920, 90, false, SENSOR, out));
+        assertFalse(MeteringMath.viewToSensor(IDENTITY, 10, 10, 0, 0, 90, false, SENSOR, out));
+    }
+
+    @Test
+    public void sensorToViewInvertsViewToSensor() {
+        final float[] transform = {0.8f, 0, 100, 0, 0.8f, 50, 0, 0, 1};
+        final int[] sensor = new int[2];
+        final float[] view = new float[2];
+        for (int orientation = 0; orientation < 360; orientation += 90) {
+            for (final boolean mirrored : new boolean[]{false, true}) {
+                assertTrue(MeteringMath.viewToSensor(transform, 300, 700, 1080, 1920, orientation, mirrored,
+                        SENSOR, sensor));
+                MeteringMath.sensorToView(transform, sensor[0], sensor[1], 1080, 1920, orientation, mirrored,
+                        SENSOR, view);
+                assertEquals(300, view[0], 2);
+                assertEquals(700, view[1], 2);
+            }
+        }
+    }
+
+    @Test
+    public void streamCropTrimsToTheStreamAspect() {
+        final int[] out = new int[4];
+        // a 16:9 preview of a 4:3 sensor loses the top and bottom
+        MeteringMath.streamCrop(SENSOR, 1920, 1080, out);
+        assertArrayEquals(new int[]{0, 375, 4000, 2625}, out);
+        // a square preview loses the sides
+        MeteringMath.streamCrop(SENSOR, 1080, 1080, out);
+        assertArrayEquals(new int[]{500, 0, 3500, 3000}, out);
+        MeteringMath.streamCrop(SENSOR, 4000, 3000, out);
+        assertArrayEquals(SENSOR, out);
+    }
+
+    @Test
+    public void streamCropFollowsZoom() {
+        final int[] out = new int[4];
+        MeteringMath.streamCrop(new int[]{1000, 750, 3000, 2250}, 1920, 1080, out);
+        assertArrayEquals(new int[]{1000, 937, 3000, 2063}, out);
+    }
+
+    @Test
+    public void regionStaysInBounds() {
+        final int[] out = new int[4];
+        MeteringMath.region(2000, 1500, 200, SENSOR, out);
+        assertArrayEquals(new int[]{1800, 1300, 2200, 1700}, out);
+        MeteringMath.region(10, 2990, 200, SENSOR, out);
+        assertArrayEquals(new int[]{0, 2600, 400, 3000}, out);
+        MeteringMath.region(50, 50, 5000, new int[]{0, 0, 300, 200}, out);
+        assertArrayEquals(new int[]{0, 0, 200, 200}, out);
+    }
+}
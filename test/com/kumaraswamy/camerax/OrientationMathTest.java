@@ -0,0 +1,56 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OrientationMathTest {
+
+    @Test
+    public void snapsToNearestQuarter() {
+        assertEquals(0, OrientationMath.snap(20, OrientationMath.UNKNOWN));
+        assertEquals(90, OrientationMath.snap(80, OrientationMath.UNKNOWN));
+        assertEquals(0, OrientationMath.snap(350, OrientationMath.UNKNOWN));
+        assertEquals(270, OrientationMath.snap(250, OrientationMath.UNKNOWN));
+    }
+
+    @Test
+    public void holdsNearTheHalfwayPoint() {
+        assertEquals(0, OrientationMath.snap(50, 0));
+        assertEquals(90, OrientationMath.snap(56, 0));
+        assertEquals(90, OrientationMath.snap(40, 90));
+        assertEquals(0, OrientationMath.snap(34, 90));
+        assertEquals(0, OrientationMath.snap(310, 0));
+    }
+
+    @Test
+    public void keepsOrientationWhenFlat() {
+        assertEquals(180, OrientationMath.snap(-1, 180));
+    }
+
+    @Test
+    public void deviceFromDisplay() {
+        assertEquals(0, OrientationMath.deviceFromDisplay(0));
+        assertEquals(270, OrientationMath.deviceFromDisplay(90));
+        assertEquals(90, OrientationMath.deviceFromDisplay(270));
+    }
+
+    @Test
+    public void jpegOrientationForBackAndFront() {
+        assertEquals(90, OrientationMath.jpegOrientation(90, false, 0));
+        assertEquals(180, OrientationMath.jpegOrientation(90, false, 90));
+        assertEquals(0, OrientationMath.jpegOrientation(90, false, 270));
+        assertEquals(270, OrientationMath.jpegOrientation(270, true, 0));
+        assertEquals(180, OrientationMath.jpegOrientation(270, true, 90));
+        assertEquals(90, OrientationMath.jpegOrientation(90, false, OrientationMath.UNKNOWN));
+    }
+
+    @Test
+    public void exifOrientation() {
+        assertEquals(1, OrientationMath.exifOrientation(0));
+        assertEquals(6, OrientationMath.exifOrientation(90));
+        assertEquals(3, OrientationMath.exifOrientation(180));
+        assertEquals(8, OrientationMath.exifOrientation(270));
+        assertEquals(6, OrientationMath.exifOrientation(-270));
+    }
+}
@@ -0,0 +1,136 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputManagerTest {
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("output", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        delete(directory);
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static File write(final File file, final int bytes, final long modified) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[bytes]);
+        out.close();
+        file.setLastModified(modified);
+        return file;
+    }
+
+    /**
+     * Writes the next file the way ProCamera does: to the temporary name, then commits it.
+     */
+    private static String save(final OutputManager manager, final int bytes) throws IOException {
+        final String path = manager.next("jpg");
+        write(new File(OutputManager.temporary(path)), bytes, System.currentTimeMillis());
+        manager.commit(path);
+        return path;
+    }
+
+    @Test
+    public void namesFilesFromTheTemplate() throws IOException {
+        final OutputManager manager = new OutputManager(directory, "scan_{counter}.{ext}", 0, 0);
+        assertEquals(new File(directory, "scan_000001.jpg").getPath(), manager.next("jpg"));
+        assertEquals(new File(directory, "scan_000002.png").getPath(), manager.next("png"));
+    }
+
+    @Test
+    public void skipsNamesThatExist() throws IOException {
+        write(new File(directory, "scan_000001.jpg"), 1, 0);
+        final OutputManager manager = new OutputManager(directory, "scan_{counter}.{ext}", 0, 0);
+        assertEquals(new File(directory, "scan_000002.jpg").getPath(), manager.next("jpg"));
+    }
+
+    @Test
+    public void shardsIntoNumberedFolders() throws IOException {
+        final OutputManager manager = new OutputManager(directory, "scan_{counter}.{ext}", 2, 0);
+        assertEquals(new File(directory, "0000/scan_000001.jpg").getPath(), manager.next("jpg"));
+        assertEquals(new File(directory, "0000/scan_000002.jpg").getPath(), manager.next("jpg"));
+        assertEquals(new File(directory, "0001/scan_000003.jpg").getPath(), manager.next("jpg"));
+    }
+
+    @Test
+    public void commitRenamesTheTemporaryFile() throws IOException {
+        final OutputManager manager = new OutputManager(directory, OutputManager.DEFAULT_TEMPLATE, 0, 0);
+        final String path = save(manager, 10);
+        assertTrue(new File(path).isFile());
+        assertFalse(new File(OutputManager.temporary(path)).exists());
+    }
+
+    @Test
+    public void evictsOldestOwnFilesOverBudget() throws IOException {
+        final File old = write(new File(directory, "scan_000100.jpg"), 400, 1000);
+        final OutputManager manager = new OutputManager(directory, "scan_{counter}.{ext}", 0, 1000);
+        final String first = save(manager, 400);
+        final String second = save(manager, 400);
+        assertFalse("the file from an earlier run goes first", old.exists());
+        assertTrue(new File(first).exists());
+        save(manager, 400);
+        assertFalse(new File(first).exists());
+        assertTrue(new File(second).exists());
+    }
+
+    @Test
+    public void neverDeletesFilesTheTemplateCannotName() throws IOException {
+        final File photo = write(new File(directory, "holiday.jpg"), 5000, 1000);
+        final File other = write(new File(directory, "IMG_20200101_000000.jpg"), 5000, 1000);
+        final File nested = write(new File(directory, "Camera/scan_000001.jpg"), 5000, 1000);
+        final File strayShard = write(new File(directory, "0000/notes.txt"), 5000, 1000);
+        final OutputManager manager = new OutputManager(directory, "scan_{counter}.{ext}", 10, 100);
+        save(manager, 50);
+        save(manager, 50);
+        save(manager, 50);
+        assertTrue(photo.exists());
+        assertTrue(other.exists());
+        assertTrue(nested.exists());
+        assertTrue(strayShard.exists());
+        assertTrue(new File(directory, "Camera").isDirectory());
+    }
+
+    @Test
+    public void deletesEmptiedShardFoldersOnly() throws IOException {
+        final OutputManager manager = new OutputManager(directory, "scan_{counter}.{ext}", 1, 150);
+        final String first = save(manager, 100);
+        save(manager, 100);
+        assertFalse(new File(first).getParentFile().exists());
+        assertTrue(directory.isDirectory());
+    }
+
+    @Test
+    public void patternMatchesEveryToken() {
+        assertTrue(OutputManager.namePattern(OutputManager.DEFAULT_TEMPLATE)
+                .matcher("IMG_20261017_120000_123_000042.heic").matches());
+        assertFalse(OutputManager.namePattern(OutputManager.DEFAULT_TEMPLATE)
+                .matcher("IMG_20261017_120000_123_000042.jpg.tmp").matches());
+        assertTrue(OutputManager.namePattern("a.b(c)_{counter}").matcher("a.b(c)_1234567").matches());
+        assertFalse(OutputManager.namePattern("a.b(c)_{counter}").matcher("aXb(c)_123456").matches());
+    }
+}
@@ -0,0 +1,98 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PhotoWriterTest {
+    private static final Executor DIRECT = new Executor() {
+        public void execute(final Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private final List<Boolean> results = new ArrayList<>();
+
+    private final PhotoWriter.Callback callback = new PhotoWriter.Callback() {
+        public void onWritten(final boolean success) {
+            results.add(success);
+        }
+    };
+
+    @Test
+    public void reportsSuccess() {
+        final PhotoWriter writer = new PhotoWriter(DIRECT, DIRECT);
+        assertTrue(writer.submit(new PhotoWriter.Job() {
+            public void write() {
+            }
+        }, callback));
+        assertEquals(1, results.size());
+        assertTrue(results.get(0));
+    }
+
+    @Test
+    public void reportsIoFailure() {
+        final PhotoWriter writer = new PhotoWriter(DIRECT, DIRECT);
+        writer.submit(new PhotoWriter.Job() {
+            public void write() throws IOException {
+                throw new IOException("card removed");
+            }
+        }, callback);
+        assertEquals(1, results.size());
+        assertFalse(results.get(0));
+    }
+
+    @Test
+    public void reportsRuntimeFailureExactlyOnce() {
+        final PhotoWriter writer = new PhotoWriter(DIRECT, DIRECT);
+        writer.submit(new PhotoWriter.Job() {
+            public void write() {
+                throw new SecurityException("no permission");
+            }
+        }, callback);
+        assertEquals(1, results.size());
+        assertFalse(results.get(0));
+    }
+
+    @Test
+    public void reportsRejectedJobs() throws InterruptedException {
+        final ExecutorService executor = PhotoWriter.newWriterExecutor(1);
+        final PhotoWriter writer = new PhotoWriter(executor, DIRECT);
+        final Object gate = new Object();
+        final PhotoWriter.Job blocking = new PhotoWriter.Job() {
+            public void write() {
+                synchronized (gate) {
+                    try {
+                        gate.wait(2000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        final PhotoWriter.Callback ignored = new PhotoWriter.Callback() {
+            public void onWritten(final boolean success) {
+            }
+        };
+        assertTrue(writer.submit(blocking, ignored));
+        Thread.sleep(100);
+        assertTrue(writer.submit(blocking, ignored));
+        assertFalse(writer.submit(blocking, callback));
+        assertEquals(1, results.size());
+        assertFalse(results.get(0));
+        synchronized (gate) {
+            gate.notifyAll();
+        }
+        writer.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,81 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.params.MeteringRectangle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SettingsBatchTest {
+    private final SettingsBatch batch = new SettingsBatch();
+
+    @Test
+    public void changesOutsideABatchPostOneFlush() {
+        assertTrue(batch.markDirty());
+        assertFalse(batch.markDirty());
+        assertTrue(batch.takeFlush());
+        assertFalse(batch.takeFlush());
+        assertTrue(batch.markDirty());
+    }
+
+    @Test
+    public void nestedBatchSendsWhenTheOutermostEnds() {
+        batch.begin();
+        batch.begin();
+        assertFalse(batch.markDirty());
+        assertFalse(batch.end());
+        assertTrue(batch.isOpen());
+        assertFalse(batch.markDirty());
+        assertTrue(batch.end());
+        assertFalse(batch.isOpen());
+        assertTrue(batch.takeFlush());
+    }
+
+    @Test
+    public void flushWhileABatchIsOpenWaitsForTheBatch() {
+        assertTrue(batch.markDirty());
+        batch.begin();
+        // the flush posted before the batch opened runs inside it
+        assertFalse(batch.takeFlush());
+        assertFalse(batch.markDirty());
+        assertTrue(batch.end());
+        assertTrue(batch.takeFlush());
+    }
+
+    @Test
+    public void batchWithoutChangesSendsNothing() {
+        batch.begin();
+        assertFalse(batch.end());
+        assertFalse(batch.end());
+        assertFalse(batch.isOpen());
+        assertFalse(batch.takeFlush());
+    }
+
+    @Test
+    public void sentRequestCarriesPendingChanges() {
+        assertTrue(batch.markDirty());
+        batch.sent();
+        assertFalse(batch.takeFlush());
+        batch.begin();
+        assertFalse(batch.markDirty());
+        batch.sent();
+        assertFalse(batch.end());
+    }
+
+    @Test
+    public void sameValueComparesArrays() {
+        assertTrue(SettingsBatch.sameValue(null, null));
+        assertTrue(SettingsBatch.sameValue(3, 3));
+        assertFalse(SettingsBatch.sameValue(3, null));
+        assertTrue(SettingsBatch.sameValue(
+                new MeteringRectangle[]{new MeteringRectangle(0, 0, 100, 100, 1000)},
+                new MeteringRectangle[]{new MeteringRectangle(0, 0, 100, 100, 1000)}));
+        assertFalse(SettingsBatch.sameValue(
+                new MeteringRectangle[]{new MeteringRectangle(0, 0, 100, 100, 1000)},
+                new MeteringRectangle[]{new MeteringRectangle(10, 0, 100, 100, 1000)}));
+        assertFalse(SettingsBatch.sameValue(new MeteringRectangle[0],
+                new MeteringRectangle[]{new MeteringRectangle(0, 0, 100, 100, 1000)}));
+        assertTrue(SettingsBatch.sameValue(new int[]{1, 2}, new int[]{1, 2}));
+    }
+}
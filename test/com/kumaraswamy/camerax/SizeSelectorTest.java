@@ -0,0 +1,59 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SizeSelectorTest {
+    // a typical back camera: 4:3 and 16:9 sizes, largest first
+    private static final int[] WIDTHS = {4032, 4000, 3840, 1920, 1440, 1280, 1280, 960, 640};
+    private static final int[] HEIGHTS = {3024, 2250, 2160, 1080, 1080, 960, 720, 720, 480};
+
+    private static int select(final float aspect, final long maxPixels, final int width, final int height,
+                              final boolean cover) {
+        return SizeSelector.select(WIDTHS, HEIGHTS, aspect, maxPixels, width, height, cover);
+    }
+
+    @Test
+    public void largestOfTheAspectWithoutTarget() {
+        assertEquals(0, select(4f / 3, 0, 0, 0, false));
+        assertEquals(1, select(16f / 9, 0, 0, 0, false));
+    }
+
+    @Test
+    public void largestWithinThePixelBudget() {
+        assertEquals(3, select(16f / 9, 1920 * 1080, 0, 0, false));
+        assertEquals(4, select(4f / 3, 1920 * 1080, 0, 0, false));
+    }
+
+    @Test
+    public void nearestToTheTarget() {
+        assertEquals(6, select(16f / 9, 0, 1200, 700, false));
+        assertEquals(5, select(4f / 3, 0, 1300, 1000, false));
+    }
+
+    @Test
+    public void coverDoesNotPickASizeBelowTheView() {
+        // 1280x720 is closer in pixels, but clearly smaller than the view
+        assertEquals(3, select(16f / 9, 0, 1500, 850, true));
+        assertEquals(6, select(16f / 9, 0, 1500, 850, false));
+        // slightly undersized still beats twice the pixels
+        assertEquals(6, select(16f / 9, 0, 1300, 740, true));
+    }
+
+    @Test
+    public void aspectOutweighsResolution() {
+        // the only size matching 16:9 near the target is preferred over a closer 4:3 one
+        assertEquals(6, select(16f / 9, 0, 1000, 740, false));
+    }
+
+    @Test
+    public void smallestWhenNothingFitsTheBudget() {
+        assertEquals(8, select(4f / 3, 100, 0, 0, false));
+    }
+
+    @Test
+    public void noCandidates() {
+        assertEquals(-1, SizeSelector.select(new int[0], new int[0], 1, 0, 0, 0, false));
+    }
+}
@@ -0,0 +1,113 @@
+package com.kumaraswamy.camerax;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraDevice;
+import android.os.Handler;
+import android.view.Surface;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StillQueueTest {
+    private final FakeCaptureBackend backend = new FakeCaptureBackend();
+    private final StillQueue queue = new StillQueue(2);
+    private int configured;
+
+    /**
+     * Opens the camera the way ProCamera does: the backend is made for the device and one
+     * session is configured with the preview outputs and the still reader.
+     */
+    private CaptureBackend open() throws CameraAccessException {
+        final CaptureBackend opened = new CaptureBackend.Factory() {
+            public CaptureBackend create(final CameraDevice camera, final Handler handler) {
+                return backend;
+            }
+        }.create(null, null);
+        opened.createSession(Collections.<Surface>emptyList(), 0x100, null, 3, null, new CaptureBackend.SessionListener() {
+            public void onConfigured() {
+                configured++;
+            }
+
+            public void onConfigureFailed() {
+                fail();
+            }
+        });
+        opened.setRepeatingRequest(null, null);
+        return opened;
+    }
+
+    @Test
+    public void picturesGoThroughTheOpenSession() throws CameraAccessException {
+        final CaptureBackend opened = open();
+        queue.capture(opened, null, null, false);
+        queue.capture(opened, null, null, true);
+        assertEquals(1, backend.sessions);
+        assertEquals(1, configured);
+        assertEquals(1, backend.repeating.size());
+        assertEquals(2, backend.captures.size());
+        assertEquals(Boolean.FALSE, queue.arrived());
+        assertEquals(Boolean.TRUE, queue.arrived());
+        queue.done();
+        queue.done();
+        assertFalse(queue.isBusy());
+        // the next picture still needs no session of its own
+        queue.capture(opened, null, null, false);
+        assertEquals(1, backend.sessions);
+    }
+
+    @Test
+    public void fillsUpToTheReaderBuffers() throws CameraAccessException {
+        final CaptureBackend opened = open();
+        queue.capture(opened, null, null, false);
+        assertFalse(queue.isFull());
+        queue.capture(opened, null, null, false);
+        assertTrue(queue.isFull());
+        queue.arrived();
+        assertTrue(queue.isFull());
+        queue.done();
+        assertFalse(queue.isFull());
+    }
+
+    @Test
+    public void imageWithoutStillIsDropped() throws CameraAccessException {
+        open();
+        assertNull(queue.arrived());
+        queue.capture(backend, null, null, true);
+        assertEquals(Boolean.TRUE, queue.arrived());
+        assertNull(queue.arrived());
+    }
+
+    @Test
+    public void failedCaptureIsTakenBack() throws CameraAccessException {
+        final CaptureBackend opened = open();
+        queue.capture(opened, null, null, false);
+        backend.failCaptures = true;
+        try {
+            queue.capture(opened, null, null, true);
+            fail();
+        }
+        catch (CameraAccessException expected) {
+            // the still never reaches the reader
+        }
+        assertFalse(queue.isFull());
+        assertEquals(Boolean.FALSE, queue.arrived());
+        assertNull(queue.arrived());
+    }
+
+    @Test
+    public void newSessionForgetsStills() throws CameraAccessException {
+        final CaptureBackend opened = open();
+        queue.capture(opened, null, null, true);
+        queue.encoding();
+        queue.clear();
+        assertFalse(queue.isBusy());
+        assertNull(queue.arrived());
+    }
+}
@@ -0,0 +1,149 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ZoomGestureTest {
+    private static final long FRAME_NANOS = 16_666_667L;
+
+    /**
+     * Replays a pinch the way the view drives it: touch moves arrive at {@code touchHz}, a
+     * display frame applies the coalesced level when one was asked for. Counts the preview
+     * requests and zoom notifications that come out.
+     */
+    private static final class Replay {
+        final ZoomGesture gesture = new ZoomGesture();
+        int requests;
+        int notifications;
+        int increased;
+        int decreased;
+        float zoom;
+
+        Replay(final float maxZoom, final float zoom) {
+            gesture.setMaxZoom(maxZoom);
+            this.zoom = zoom;
+        }
+
+        /**
+         * @param spacings finger spacing of each touch move
+         */
+        void pinch(final float startSpacing, final float[] spacings, final int touchHz) {
+            final long touchNanos = 1_000_000_000L / touchHz;
+            gesture.begin(startSpacing, zoom);
+            boolean scheduled = false;
+            long nextFrame = FRAME_NANOS;
+            long now = 0;
+            for (final float spacing : spacings) {
+                now += touchNanos;
+                while (nextFrame <= now) {
+                    if (scheduled) {
+                        scheduled = false;
+                        frame(nextFrame);
+                    }
+                    nextFrame += FRAME_NANOS;
+                }
+                if (gesture.move(spacing)) {
+                    assertFalse("one frame callback at a time", scheduled);
+                    scheduled = true;
+                }
+            }
+            gesture.end();
+            if (scheduled) {
+                frame(nextFrame);
+            } else {
+                notify(now);
+            }
+        }
+
+        private void frame(final long nowNanos) {
+            final float level = gesture.onFrame();
+            if (level > 0) {
+                zoom = level;
+                requests++;
+            }
+            notify(nowNanos);
+        }
+
+        private void notify(final long nowNanos) {
+            final int direction = gesture.notification(nowNanos);
+            if (direction != ZoomGesture.NO_CHANGE) {
+                notifications++;
+                if (direction == ZoomGesture.INCREASED) {
+                    increased++;
+                } else {
+                    decreased++;
+                }
+            }
+        }
+    }
+
+    private static float[] ramp(final float from, final float to, final int steps) {
+        final float[] spacings = new float[steps];
+        for (int i = 0; i < steps; i++) {
+            spacings[i] = from + (to - from) * (i + 1) / steps;
+        }
+        return spacings;
+    }
+
+    @Test
+    public void coalescesMovesToOneRequestPerFrame() {
+        final Replay replay = new Replay(8, 1);
+        // half a second of spreading the fingers, sampled at 240 Hz
+        replay.pinch(200, ramp(200, 600, 120), 240);
+        assertEquals(3f, replay.zoom, 1e-4f);
+        assertTrue("requests " + replay.requests, replay.requests <= 31);
+        assertTrue(replay.requests >= 25);
+    }
+
+    @Test
+    public void throttlesNotifications() {
+        final Replay replay = new Replay(8, 1);
+        replay.pinch(200, ramp(200, 600, 120), 240);
+        // at most one per 100 ms during the half second, plus the final one
+        assertTrue("notifications " + replay.notifications, replay.notifications <= 6);
+        assertEquals(replay.notifications, replay.increased);
+    }
+
+    @Test
+    public void reportsTheFinalLevelWhenTheGestureEnds() {
+        final Replay replay = new Replay(8, 2);
+        replay.pinch(400, ramp(400, 300, 10), 120);
+        assertEquals(1.5f, replay.zoom, 1e-4f);
+        assertTrue(replay.decreased >= 1);
+        assertEquals(ZoomGesture.NO_CHANGE, replay.gesture.notification(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void clampsToTheZoomRange() {
+        final Replay replay = new Replay(4, 1);
+        replay.pinch(100, ramp(100, 1000, 60), 120);
+        assertEquals(4f, replay.zoom, 0f);
+        final Replay out = new Replay(4, 2);
+        out.pinch(400, ramp(400, 50, 60), 120);
+        assertEquals(1f, out.zoom, 0f);
+    }
+
+    @Test
+    public void stillFingersSendNothing() {
+        final Replay replay = new Replay(8, 2);
+        final float[] still = new float[60];
+        java.util.Arrays.fill(still, 300);
+        replay.pinch(300, still, 120);
+        assertEquals(0, replay.requests);
+        assertEquals(0, replay.notifications);
+        assertEquals(2f, replay.zoom, 0f);
+    }
+
+    @Test
+    public void ignoresMovesOutsideAGesture() {
+        final ZoomGesture gesture = new ZoomGesture();
+        gesture.setMaxZoom(8);
+        assertFalse(gesture.move(300));
+        gesture.begin(0, 1);
+        assertFalse(gesture.isActive());
+        assertFalse(gesture.move(300));
+    }
+}
@@ -0,0 +1,63 @@
+package com.kumaraswamy.camerax;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ZslFrameSelectorTest {
+    private static final long FRAME = 33_333_333L;
+
+    @Test
+    public void closestToTheTap() {
+        final long[] timestamps = {4 * FRAME, 2 * FRAME, 3 * FRAME, 1 * FRAME};
+        assertEquals(2, ZslFrameSelector.closest(timestamps, 3 * FRAME + 1000));
+        assertEquals(3, ZslFrameSelector.closest(timestamps, 0));
+        assertEquals(0, ZslFrameSelector.closest(timestamps, 9 * FRAME));
+    }
+
+    @Test
+    public void closestSkipsEmptySlots() {
+        assertEquals(1, ZslFrameSelector.closest(new long[]{-1, 5 * FRAME, -1}, 0));
+        assertEquals(-1, ZslFrameSelector.closest(new long[]{-1, -1}, 0));
+        assertEquals(-1, ZslFrameSelector.closest(new long[0], 0));
+    }
+
+    @Test
+    public void sharpestWithinTheWindow() {
+        final long[] timestamps = {1 * FRAME, 2 * FRAME, 3 * FRAME, 4 * FRAME};
+        final float[] sharpness = {9, 5, 7, 6};
+        // the sharpest frame is too old for a window of three
+        assertEquals(2, ZslFrameSelector.sharpest(timestamps, sharpness, 3));
+        assertEquals(0, ZslFrameSelector.sharpest(timestamps, sharpness, 4));
+        assertEquals(3, ZslFrameSelector.sharpest(timestamps, sharpness, 1));
+    }
+
+    @Test
+    public void sharpestPrefersTheNewerOnATie() {
+        final long[] timestamps = {3 * FRAME, -1, 5 * FRAME, 4 * FRAME};
+        final float[] sharpness = {4, 99, 4, 4};
+        assertEquals(2, ZslFrameSelector.sharpest(timestamps, sharpness, 3));
+        assertEquals(-1, ZslFrameSelector.sharpest(new long[]{-1}, new float[]{1}, 3));
+    }
+
+    @Test
+    public void sharpnessRanksEdgesAboveFlat() {
+        final int width = 64;
+        final int height = 48;
+        final int stride = 80;
+        final ByteBuffer flat = ByteBuffer.allocate(stride * height);
+        final ByteBuffer checker = ByteBuffer.allocate(stride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < stride; x++) {
+                flat.put(y * stride + x, (byte) 128);
+                checker.put(y * stride + x, (byte) (((x / 4 + y / 4) & 1) == 0 ? 20 : 230));
+            }
+        }
+        assertEquals(0f, ZslFrameSelector.sharpness(flat, stride, width, height, 1), 0f);
+        assertTrue(ZslFrameSelector.sharpness(checker, stride, width, height, 1) > 10);
+        assertEquals(0f, ZslFrameSelector.sharpness(flat, stride, 1, 1, 1), 0f);
+    }
+}